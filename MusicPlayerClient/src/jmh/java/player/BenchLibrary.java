@@ -0,0 +1,78 @@
+package player;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+// Synthetic libraries for the benchmarks.
+//
+// tree(n) writes n empty .mp3 files as Artist/Album/NN Track.mp3 (12 tracks per
+// album, 8 albums per artist) with a cover.jpg per album for the scanner to
+// skip. Trees are kept under java.io.tmpdir/musicplayer-bench and reused by
+// later runs; the 1M one takes a while to write the first time.
+final class BenchLibrary {
+    static final Set<String> EXT = Set.of("mp3", "m4a", "aac", "wav");
+
+    private BenchLibrary() {}
+
+    static Path tree(int files) throws IOException {
+        Path root = Path.of(System.getProperty("java.io.tmpdir"), "musicplayer-bench", "lib-" + files);
+        Path complete = root.resolve(".complete");
+        if (Files.exists(complete)) return root;
+
+        deleteTree(root); // left over from an interrupted run
+        for (int i = 0; i < files; i++) {
+            int album = i / 12;
+            Path dir = root.resolve("Artist " + (album / 8)).resolve("Album " + album);
+            if (i % 12 == 0) {
+                Files.createDirectories(dir);
+                Files.createFile(dir.resolve("cover.jpg"));
+            }
+            Files.createFile(dir.resolve(String.format("%02d Track %d.mp3", i % 12 + 1, i)));
+        }
+        Files.createFile(complete);
+        return root;
+    }
+
+    // A playlist loaded from tree(files)
+    static Playlist playlist(int files) throws IOException {
+        Playlist p = new Playlist(EXT);
+        p.loadFromFolder(tree(files));
+        return p;
+    }
+
+    // A store of n tagged tracks that don't exist on disk (no scan needed)
+    static TrackStore store(int n) {
+        TrackStore s = new TrackStore(n);
+        for (int i = 0; i < n; i++) {
+            int album = i / 12;
+            int id = s.add(Path.of("/bench", "Artist " + (album / 8), "Album " + album,
+                    String.format("%02d Track %d.mp3", i % 12 + 1, i)), 4_000_000, 1_600_000_000_000L + i * 1000L);
+            s.setInfo(id, new TrackInfo("Track " + i, "Artist " + (album / 8), "Album " + album, i % 12 + 1, 180_000, -1, -1));
+        }
+        return s;
+    }
+
+    // Ids 0..n-1 in random order
+    static int[] shuffledIds(int n, long seed) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) ids[i] = i;
+        Random r = new Random(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int t = ids[i];
+            ids[i] = ids[j];
+            ids[j] = t;
+        }
+        return ids;
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (!Files.exists(root)) return;
+        try (Stream<Path> s = Files.walk(root)) {
+            for (Path p : s.sorted(Comparator.reverseOrder()).toList()) Files.delete(p);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package player;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load generator for ControlServer. Like ListScrollBench this is a plain main
+// rather than a JMH benchmark:
+//
+//   ./gradlew benchControl                                     (in-process server, trivial handler)
+//   ./gradlew benchControl --args="--connect=7700 now"         (a running player: only read-only commands!)
+//   ./gradlew benchControl --args="--clients=16 --window=64 --seconds=10"
+//
+// Each client keeps `window` requests in flight on its connection for the run;
+// one extra connection subscribes and counts events. In-process, every 10th
+// request is "vol", which publishes an event, the rest "now". Prints commands/s
+// and the request-to-reply latency.
+public class ControlLoadBench {
+    public static void main(String[] args) throws Exception {
+        int clients = 8, window = 32, seconds = 5;
+        String connect = null;
+        String command = null;
+        for (String a : args) {
+            if (a.startsWith("--clients=")) clients = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--window=")) window = Integer.parseInt(a.substring(9));
+            else if (a.startsWith("--seconds=")) seconds = Integer.parseInt(a.substring(10));
+            else if (a.startsWith("--connect=")) connect = a.substring(10);
+            else command = a;
+        }
+
+        ControlServer server = null;
+        if (connect == null) {
+            ControlServer[] self = new ControlServer[1];
+            server = ControlServer.open("0", (cmd, a) -> {
+                if (cmd.equals("vol")) self[0].publish("volume " + a);
+                return CompletableFuture.completedFuture("Now: [0] bench.mp3  0:00 / 3:00");
+            });
+            self[0] = server;
+            connect = server.address().substring(server.address().lastIndexOf(':') + 1);
+        }
+
+        String target = connect;
+        long until = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong events = new AtomicLong();
+        Thread subscriber = new Thread(() -> subscribe(connectTo(target), events), "subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+
+        Client[] cs = new Client[clients];
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            cs[i] = new Client(target, window, command, until, done);
+            new Thread(cs[i], "client-" + i).start();
+        }
+        done.await();
+
+        long n = 0, errors = 0;
+        int samples = 0;
+        for (Client c : cs) {
+            n += c.replies;
+            errors += c.errors;
+            samples += c.latencyCount;
+        }
+        long[] lat = new long[samples];
+        int at = 0;
+        for (Client c : cs) {
+            System.arraycopy(c.latencyNs, 0, lat, at, c.latencyCount);
+            at += c.latencyCount;
+        }
+        Arrays.sort(lat);
+
+        System.out.printf("%d clients x %d in flight, %d s against %s%n", clients, window, seconds,
+                server != null ? "in-process server" : target);
+        System.out.printf("commands/s  %,.0f   (%,d replies, %d errors, %,d events)%n", n / (double) seconds, n, errors, events.get());
+        if (lat.length > 0)
+            System.out.printf("latency us  p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n", lat[lat.length / 2] / 1e3,
+                    lat[(int) (lat.length * 0.99)] / 1e3, lat[(int) (lat.length * 0.999)] / 1e3, lat[lat.length - 1] / 1e3);
+        if (server != null) server.close();
+        System.exit(0);
+    }
+
+    static SocketChannel connectTo(String spec) {
+        try {
+            if (spec.startsWith("unix:")) {
+                SocketChannel ch = SocketChannel.open(StandardProtocolFamily.UNIX);
+                ch.connect(UnixDomainSocketAddress.of(Path.of(spec.substring(5))));
+                return ch;
+            }
+            return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void subscribe(SocketChannel ch, AtomicLong events) {
+        try (ch) {
+            Writer w = new OutputStreamWriter(Channels.newOutputStream(ch), StandardCharsets.UTF_8);
+            w.write("subscribe\n");
+            w.flush();
+            BufferedReader r = new BufferedReader(new InputStreamReader(Channels.newInputStream(ch), StandardCharsets.UTF_8));
+            for (String line; (line = r.readLine()) != null; ) {
+                if (line.startsWith("!")) events.incrementAndGet();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final class Client implements Runnable {
+        private static final int MAX_SAMPLES = 1 << 20;
+
+        final String spec;
+        final int window;
+        final String command; // null: the in-process mix
+        final long until;
+        final CountDownLatch done;
+        final long[] sentAt;  // ring of send times, one per request in flight
+        final long[] latencyNs = new long[MAX_SAMPLES];
+        int latencyCount = 0;
+        long replies = 0, errors = 0, sent = 0;
+
+        Client(String spec, int window, String command, long until, CountDownLatch done) {
+            this.spec = spec;
+            this.window = window;
+            this.command = command;
+            this.until = until;
+            this.done = done;
+            this.sentAt = new long[window];
+        }
+
+        @Override
+        public void run() {
+            try (SocketChannel ch = connectTo(spec)) {
+                BufferedWriter w = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(ch), StandardCharsets.UTF_8));
+                BufferedReader r = new BufferedReader(new InputStreamReader(Channels.newInputStream(ch), StandardCharsets.UTF_8));
+                for (int i = 0; i < window; i++) send(w);
+                w.flush();
+                while (replies < sent) {
+                    String line = r.readLine();
+                    if (line == null) break;
+                    if (line.startsWith("!")) continue;
+                    if (line.startsWith("*")) {
+                        for (int k = Integer.parseInt(line.substring(1)); k > 0; k--) r.readLine();
+                    } else if (line.startsWith("-")) {
+                        errors++;
+                    }
+                    long t = System.nanoTime();
+                    if (latencyCount < MAX_SAMPLES) latencyNs[latencyCount++] = t - sentAt[(int) (replies % window)];
+                    replies++;
+                    if (t < until) send(w);
+                    if (!r.ready()) w.flush(); // batch while replies keep coming
+                }
+            } catch (IOException e) {
+                System.out.println("client: " + e.getMessage());
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void send(Writer w) throws IOException {
+            String c = (command != null) ? command : (sent % 10 == 9) ? "vol 0.5" : "now";
+            sentAt[(int) (sent % window)] = System.nanoTime();
+            w.write(c);
+            w.write('\n');
+            sent++;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// The same operations through each playback backend (see AudioEngineProvider),
+// on a generated 10 s WAV that every backend can play. Needs an audio device;
+// a backend that can't run here fails its setup. The javafx engine plays WAV
+// through a HeadlessEngine of its own (see PlayerEngine), so its rows turn that
+// off with player.mappedWav=false and measure MediaPlayer itself.
+//
+//   ./gradlew jmh -Pbench=EngineBench
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBench {
+    @Param({"javafx", "headless"})
+    String engine;
+
+    private AudioEngine player;
+    private Track track;
+    private double at = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        track = new Track(wav(10));
+        if (engine.equals("javafx")) System.setProperty("player.mappedWav", "false");
+        player = AudioEngineProvider.create(engine);
+        player.setVolume(0.0);
+        player.play(track);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        player.stop();
+        Files.deleteIfExists(track.path());
+    }
+
+    // Open + start from scratch (what next/prev costs the caller)
+    @Benchmark
+    public void play() {
+        player.play(track);
+    }
+
+    @Benchmark
+    public void seek() {
+        at = (at + 1.7) % 8;
+        player.seekSeconds(at);
+    }
+
+    @Benchmark
+    public void pauseResume() {
+        player.pause();
+        player.resume();
+    }
+
+    // Position and duration, as "now" shows them
+    @Benchmark
+    public String nowPlaying() {
+        return player.nowPlaying("", track);
+    }
+
+    private static Path wav(int seconds) throws IOException {
+        AudioFormat f = new AudioFormat(44100, 16, 2, true, false);
+        int frames = 44100 * seconds;
+        byte[] pcm = new byte[frames * f.getFrameSize()]; // silence
+        Path p = Files.createTempFile("engine-bench", ".wav");
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), f, frames), AudioFileFormat.Type.WAVE, p.toFile());
+        return p;
+    }
+}
@@ -0,0 +1,35 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Playlist.ext(), called for every file the scanner and watcher see
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtBench {
+    private static final int N = 1024;
+    private static final String[] NAMES = {
+            "01 Intro.mp3", "Some Song (Live).M4A", "track.wav", "cover.jpg", "README",
+            "a.b.c.aac", ".hidden", "Very Long File Name With Many Words - Remastered 2011.mp3"
+    };
+
+    private final Path[] paths = new Path[N];
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < N; i++) paths[i] = Path.of("/music/Artist/Album", NAMES[i % NAMES.length]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void ext(Blackhole bh) {
+        for (Path p : paths) bh.consume(Playlist.ext(p));
+    }
+}
@@ -0,0 +1,104 @@
+package player;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Heap taken by a library held as a TrackStore + int[] of ids, against the
+// List<Track> of Track objects with their own Path that Playlist used before.
+// Not a JMH benchmark (JMH measures time); run with
+//
+//   ./gradlew benchFootprint                       (100k and 1M tracks)
+//   ./gradlew benchFootprint --args="250000"
+//
+// Each row is measured twice: right after the scan, and after a sort by name
+// has built the name keys. Numbers are retained heap after full GCs, so give
+// the JVM room (the task uses -Xmx3g).
+public class FootprintBench {
+    private static final Path ROOT = Path.of("/home/user/Music");
+
+    public static void main(String[] args) {
+        int[] sizes = (args.length > 0) ? new int[] { Integer.parseInt(args[0]) } : new int[] { 100_000, 1_000_000 };
+        System.out.printf("%-10s %-22s %12s %12s%n", "tracks", "representation", "MB", "bytes/track");
+        for (int n : sizes) {
+            measure(n, "List<Track> (before)", false, false);
+            measure(n, "  + name keys", false, true);
+            measure(n, "TrackStore", true, false);
+            measure(n, "  + name keys", true, true);
+        }
+    }
+
+    private static void measure(int n, String label, boolean store, boolean keys) {
+        long before = usedAfterGc();
+        Object kept = store ? storeLibrary(n, keys) : legacyLibrary(n, keys);
+        long used = usedAfterGc() - before;
+        System.out.printf("%-10d %-22s %12.1f %12.1f%n", n, label, used / 1048576.0, (double) used / n);
+        if (kept.hashCode() == 42) System.out.print(""); // keep it reachable until measured
+    }
+
+    // Same layout as BenchLibrary: Artist/Album/NN Track.mp3, 12 per album, 8 albums per artist
+    private static Path dir(int i) {
+        int album = i / 12;
+        return ROOT.resolve("Artist " + (album / 8)).resolve("Album " + album);
+    }
+
+    private static String name(int i) {
+        return String.format("%02d Track %d.mp3", i % 12 + 1, i);
+    }
+
+    private static Object storeLibrary(int n, boolean keys) {
+        TrackStore s = new TrackStore();
+        int[] ids = new int[n];
+        Path dir = null;
+        for (int i = 0; i < n; i++) {
+            if (i % 12 == 0) dir = dir(i); // the scanner resolves each file against its folder
+            ids[i] = s.add(dir.resolve(name(i)), 4_000_000, 1_600_000_000_000L + i);
+        }
+        if (keys) SortOrder.NAME.prepare(s, ids, n);
+        return new Object[] { s, ids };
+    }
+
+    private static Object legacyLibrary(int n, boolean keys) {
+        List<LegacyTrack> tracks = new ArrayList<>();
+        Path dir = null;
+        for (int i = 0; i < n; i++) {
+            if (i % 12 == 0) dir = dir(i);
+            LegacyTrack t = new LegacyTrack(dir.resolve(name(i)), 4_000_000, 1_600_000_000_000L + i);
+            if (keys) t.nameKey = SortKeys.of(t.path.getFileName().toString());
+            tracks.add(t);
+        }
+        return tracks;
+    }
+
+    private static long usedAfterGc() {
+        var mem = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // a few rounds until it stops shrinking
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long u = mem.getHeapMemoryUsage().getUsed();
+            if (u >= used) break;
+            used = u;
+        }
+        return used;
+    }
+
+    // The fields Track had before TrackStore
+    @SuppressWarnings("unused")
+    private static final class LegacyTrack {
+        final Path path;
+        final long size;
+        final long modified;
+        volatile TrackInfo info;
+        volatile byte[] nameKey;
+        volatile byte[] dirKey;
+        volatile Object tagKeys;
+
+        LegacyTrack(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+}
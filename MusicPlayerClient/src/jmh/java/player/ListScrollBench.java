@@ -0,0 +1,218 @@
+package player;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.TranslateTransition;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.Scene;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+// Scrolls the music list through a large library and reports what each FX
+// pulse costs. Not a JMH benchmark: frame timing needs a real pulse loop, so
+// this is a small JavaFX app run with
+//
+//   ./gradlew benchListScroll                        (TrackCell, 100k rows)
+//   ./gradlew benchListScroll --args="100000 legacy" (the old setStyle cell and item list)
+//
+// Every pulse moves the selection down by `step` rows (held-down arrow key at
+// full speed, large enough to pass every row once). Per pulse it records
+//   - CSS + layout time: animation phase start -> post-layout listener
+//   - bytes allocated on the FX thread
+//   - pulse-to-pulse interval
+// and prints percentiles plus the number of GCs during the measured part.
+public class ListScrollBench extends Application {
+    private static final int WARMUP = 600;   // pulses
+    private static final int MEASURE = 3000; // pulses
+
+    private static int rows = 100_000;
+    private static boolean legacy = false;
+
+    private final long[] layoutNs = new long[MEASURE];
+    private final long[] allocBytes = new long[MEASURE];
+    private final long[] intervalNs = new long[MEASURE];
+    private int current = -1;  // measured pulse in progress, -1 outside the measured part
+    private long pulseStart;   // FX thread only, like everything here
+
+    public static void main(String[] args) {
+        if (args.length > 0) rows = Integer.parseInt(args[0]);
+        legacy = args.length > 1 && args[1].equals("legacy");
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage stage) {
+        TrackStore store = new TrackStore(rows);
+        int[] ids = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            ids[i] = store.add(Path.of("/bench/artist-" + (i % 500), String.format("track-%06d.mp3", i)), -1, -1);
+            // every 7th title is too long for the row, so the marquee gets exercised too
+            String title = (i % 7 == 0) ? "A rather long song title that will not fit " + i : "Song " + i;
+            store.setInfo(ids[i], new TrackInfo(title, "Artist " + (i % 500), "Album " + (i % 2000), i % 12 + 1, 180_000, -1, -1));
+        }
+        List<Track> tracks = store.tracks(ids, 0, rows);
+
+        ListView<Track> list;
+        if (legacy) {
+            list = new ListView<>(FXCollections.observableArrayList(tracks));
+            list.setCellFactory(lv -> new LegacyCell(lv));
+        } else {
+            list = new ListView<>(new TrackItems());
+            list.getItems().setAll(tracks);
+            list.getStylesheets().add(getClass().getResource(TrackCell.STYLESHEET).toExternalForm());
+            list.setCellFactory(lv -> new TrackCell(240 - 50, t -> {}));
+        }
+        list.setFixedCellSize(48);
+
+        Scene scene = new Scene(list, 240, 480);
+        stage.setTitle("ListScrollBench");
+        stage.setScene(scene);
+        stage.show();
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long fxThread = Thread.currentThread().getId();
+        int step = Math.max(1, rows / (WARMUP + MEASURE));
+
+        scene.addPostLayoutPulseListener(() -> {
+            if (current >= 0) layoutNs[current] = System.nanoTime() - pulseStart;
+        });
+
+        new AnimationTimer() {
+            int pulse = 0;
+            int row = 0;
+            long lastNow = 0;
+            long lastAlloc = 0;
+            long gcBefore = 0;
+
+            @Override
+            public void handle(long now) {
+                long alloc = threads.getThreadAllocatedBytes(fxThread);
+                int m = pulse - WARMUP;
+                if (m == 0) gcBefore = gcCount();
+                if (m > 0 && m <= MEASURE) {
+                    allocBytes[m - 1] = alloc - lastAlloc;
+                    intervalNs[m - 1] = now - lastNow;
+                }
+                lastAlloc = alloc;
+                lastNow = now;
+
+                if (m == MEASURE) {
+                    stop();
+                    current = -1;
+                    report(step, gcCount() - gcBefore);
+                    Platform.exit();
+                    return;
+                }
+
+                current = m;
+                pulseStart = System.nanoTime();
+                row = (row + step) % rows;
+                list.getSelectionModel().select(row);
+                list.scrollTo(row);
+                pulse++;
+            }
+        }.start();
+    }
+
+    private void report(int step, long gcs) {
+        System.out.printf("%s cell, %d rows, %d rows/pulse, %d pulses measured%n",
+                legacy ? "legacy" : "TrackCell", rows, step, MEASURE);
+        line("css+layout (us)", layoutNs, 1e-3);
+        line("pulse interval (ms)", intervalNs, 1e-6);
+        line("allocated (KB)", allocBytes, 1.0 / 1024);
+        System.out.printf("GCs during run: %d%n", gcs);
+    }
+
+    private static void line(String what, long[] v, double scale) {
+        long[] s = v.clone();
+        Arrays.sort(s);
+        double mean = Arrays.stream(s).average().orElse(0);
+        System.out.printf("%-22s mean %9.2f  p50 %9.2f  p99 %9.2f  max %9.2f%n", what,
+                mean * scale, s[s.length / 2] * scale, s[(int) (s.length * 0.99)] * scale, s[s.length - 1] * scale);
+    }
+
+    private static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+        return n;
+    }
+
+    // The cell as it was before TrackCell: inline CSS strings on every update
+    // and a new marquee transition per selection change. Kept for comparison.
+    private static final class LegacyCell extends ListCell<Track> {
+        private final ListView<Track> lv;
+        private final javafx.scene.control.Label title = new javafx.scene.control.Label();
+        private final javafx.scene.control.Label artist = new javafx.scene.control.Label();
+        private final javafx.scene.layout.VBox textBox = new javafx.scene.layout.VBox(2, title, artist);
+        private TranslateTransition marquee;
+
+        LegacyCell(ListView<Track> lv) {
+            this.lv = lv;
+            title.setStyle("""
+                -fx-text-fill: black;
+                -fx-font-size: 12;
+                -fx-font-weight: bold;
+            """);
+            artist.setStyle("""
+                -fx-text-fill: black;
+                -fx-font-size: 10;
+            """);
+            setGraphic(textBox);
+        }
+
+        @Override
+        protected void updateItem(Track item, boolean empty) {
+            super.updateItem(item, empty);
+            if (empty || item == null) {
+                setGraphic(null);
+                setStyle("-fx-background-color: transparent;");
+                return;
+            }
+            title.setText(item.title());
+            title.setMinWidth(javafx.scene.layout.Region.USE_PREF_SIZE);
+            title.setMaxWidth(javafx.scene.layout.Region.USE_PREF_SIZE);
+            String a = item.artist();
+            artist.setText(a != null ? a : "Unknown Artist");
+            setGraphic(textBox);
+            updateSelectionStyle();
+        }
+
+        @Override
+        public void updateSelected(boolean selected) {
+            super.updateSelected(selected);
+            updateSelectionStyle();
+            if (marquee != null) marquee.stop();
+            title.setTranslateX(0);
+            if (selected) {
+                double overflow = title.getWidth() - (lv.getWidth() - 40);
+                if (overflow > 0) {
+                    marquee = new TranslateTransition(Duration.seconds(overflow / 30), title);
+                    marquee.setFromX(0);
+                    marquee.setToX(-overflow);
+                    marquee.setAutoReverse(true);
+                    marquee.setCycleCount(TranslateTransition.INDEFINITE);
+                    marquee.play();
+                }
+            }
+        }
+
+        private void updateSelectionStyle() {
+            setStyle(isSelected() ? """
+                -fx-background-color: rgba(76,175,80,0.85);
+                -fx-background-radius: 10;
+            """ : """
+                -fx-background-color: rgba(255,255,255,0.05);
+                -fx-background-radius: 10;
+            """);
+        }
+    }
+}
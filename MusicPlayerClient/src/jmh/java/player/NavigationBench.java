@@ -0,0 +1,51 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// next / prev / setIndex / peekNext on a loaded playlist
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBench {
+    @Param({"1000", "100000"})
+    int files;
+
+    private Playlist playlist;
+    private final int[] jumps = new int[4096];
+    private int j = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        playlist = BenchLibrary.playlist(files);
+        Random rng = new Random(7);
+        for (int i = 0; i < jumps.length; i++) jumps[i] = rng.nextInt(playlist.size());
+    }
+
+    @Benchmark
+    public Track next() {
+        return playlist.next();
+    }
+
+    @Benchmark
+    public Track prev() {
+        return playlist.prev();
+    }
+
+    @Benchmark
+    public Track setIndex() {
+        j = (j + 1) & (jumps.length - 1);
+        return playlist.setIndex(jumps[j]);
+    }
+
+    @Benchmark
+    public Track peekNext() {
+        return playlist.peekNext();
+    }
+}
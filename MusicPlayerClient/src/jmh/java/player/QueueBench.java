@@ -0,0 +1,74 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Play queue edits at a given queue length, against the ArrayList a queue
+// would naively be. Each op is paired with its inverse so the size stays put.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBench {
+    @Param({"100", "50000"})
+    int queued;
+
+    private PlayQueue queue;
+    private List<Track> list;
+    private Track track;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TrackStore s = BenchLibrary.store(queued);
+        queue = new PlayQueue();
+        list = new ArrayList<>();
+        for (int i = 0; i < queued; i++) {
+            queue.addLast(s.track(i));
+            list.add(s.track(i));
+        }
+        track = new Track(Path.of("/bench/extra.mp3"));
+    }
+
+    // "play next" then it plays
+    @Benchmark
+    public Track playNext() {
+        queue.addFirst(track);
+        return queue.poll();
+    }
+
+    @Benchmark
+    public Track addLastPoll() {
+        queue.addLast(track);
+        return queue.poll();
+    }
+
+    @Benchmark
+    public Track insertMiddle() {
+        queue.insert(queued / 2, track);
+        return queue.remove(queued / 2);
+    }
+
+    @Benchmark
+    public Track moveFrontToBack() {
+        queue.move(0, queued - 1);
+        return queue.get(queued / 2);
+    }
+
+    @Benchmark
+    public Track arrayListPlayNext() {
+        list.add(0, track);
+        return list.remove(0);
+    }
+
+    @Benchmark
+    public Track arrayListInsertMiddle() {
+        list.add(queued / 2, track);
+        return list.remove(queued / 2);
+    }
+}
@@ -0,0 +1,55 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Playlist.loadFromFolder over generated trees (see BenchLibrary).
+//   cold: no library index, every folder is listed
+//   warm: index from the previous load and nothing changed, so folders are only stat'ed
+// The library index goes to a temp folder, never ~/.musicplayer.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ScanBench {
+    @Param({"1000", "10000", "100000", "1000000"})
+    int files;
+
+    @Param({"cold", "warm"})
+    String index;
+
+    private Path root;
+    private Path cache;
+    private Playlist playlist;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = BenchLibrary.tree(files);
+        cache = Files.createTempDirectory("musicplayer-bench-cache");
+        System.setProperty("musicplayer.cacheDir", cache.toString());
+        playlist = new Playlist(BenchLibrary.EXT);
+        playlist.loadFromFolder(root); // writes the index used by "warm"
+    }
+
+    @Setup(Level.Iteration)
+    public void dropIndex() throws IOException {
+        if (index.equals("cold")) Files.deleteIfExists(LibraryIndex.fileFor(root));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchLibrary.deleteTree(cache);
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        playlist.loadFromFolder(root);
+        return playlist.size();
+    }
+}
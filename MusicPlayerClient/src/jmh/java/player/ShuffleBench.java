@@ -0,0 +1,46 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Shuffle navigation (Playlist with shuffle on, as used by MainApp's Mix button
+// and auto-advance). Each call should cost the same whatever the size, apart
+// from the one cycle restart every `files` calls.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShuffleBench {
+    @Param({"2", "100", "100000"})
+    int files;
+
+    private Playlist playlist;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        playlist = BenchLibrary.playlist(files);
+        playlist.setIndex(0);
+        playlist.setShuffle(true);
+    }
+
+    @Benchmark
+    public Track peekNext() {
+        return playlist.peekNext();
+    }
+
+    @Benchmark
+    public Track next() {
+        return playlist.next();
+    }
+
+    // next then prev: walks back through the history
+    @Benchmark
+    public Track nextPrev() {
+        playlist.next();
+        return playlist.prev();
+    }
+}
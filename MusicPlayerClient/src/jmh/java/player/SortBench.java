@@ -0,0 +1,82 @@
+package player;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Playlist sorting over shuffled, tagged tracks.
+//   sort      - what Playlist does: keys (cached after the first run) + parallel merge sort of ids
+//   objects   - the same comparisons on a Track[] of flyweights with Arrays.sort
+//   lowercase - the old comparator: toLowerCase on both names in every comparison
+//   buildKeys - building every key for `order` from scratch in a fresh store
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SortBench {
+    private static final Comparator<Track> LOWERCASE =
+            Comparator.comparing(t -> t.displayName().toLowerCase(Locale.ROOT));
+
+    @Param({"10000", "100000", "1000000"})
+    int tracks;
+
+    @Param({"NAME", "PATH", "ARTIST"})
+    SortOrder order;
+
+    private TrackStore store;
+    private int[] shuffled;
+    private int[] work;
+    private Track[] objects;
+    private TrackStore fresh;
+    private int[] freshIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = BenchLibrary.store(tracks);
+        shuffled = BenchLibrary.shuffledIds(tracks, 42);
+        order.prepare(store, shuffled, tracks);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        work = shuffled.clone();
+        objects = new Track[tracks];
+        for (int i = 0; i < tracks; i++) objects[i] = store.track(shuffled[i]);
+    }
+
+    @Setup(Level.Iteration)
+    public void freshStore() {
+        fresh = BenchLibrary.store(tracks);
+        freshIds = BenchLibrary.shuffledIds(tracks, 43);
+    }
+
+    @Benchmark
+    public int[] sort() {
+        order.sort(store, work, tracks);
+        return work;
+    }
+
+    @Benchmark
+    public Track[] objects() {
+        Arrays.sort(objects, order.comparator());
+        return objects;
+    }
+
+    @Benchmark
+    public Track[] lowercase() {
+        Arrays.sort(objects, LOWERCASE);
+        return objects;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public TrackStore buildKeys() {
+        order.prepare(fresh, freshIds, tracks);
+        return fresh;
+    }
+}
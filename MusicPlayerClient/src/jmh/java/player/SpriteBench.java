@@ -0,0 +1,163 @@
+package player;
+
+import javafx.animation.Animation;
+import javafx.animation.AnimationTimer;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import javafx.stage.Stage;
+import javafx.util.Duration;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Frame cost of animated sprites, 1 and then 50 at once. Like ListScrollBench
+// this is a small JavaFX app rather than a JMH benchmark:
+//
+//   ./gradlew benchSprites                       (DancerSprite on the shared SpriteAnimator)
+//   ./gradlew benchSprites --args="legacy"       (a Timeline per sprite, new viewport per frame)
+//
+// Per pulse it records the animation + CSS + layout time (from the first
+// animation timer to the post-layout listener), the bytes allocated on the FX
+// thread and the pulse-to-pulse interval.
+public class SpriteBench extends Application {
+    private static final int[] COUNTS = { 1, 50 };
+    private static final int WARMUP = 300;   // pulses per round
+    private static final int MEASURE = 1200; // pulses per round
+    private static final double FPS = 1000.0 / 90;
+
+    private static boolean legacy = false;
+
+    private final long[] frameNs = new long[MEASURE];
+    private final long[] allocBytes = new long[MEASURE];
+    private final long[] intervalNs = new long[MEASURE];
+    private int current = -1; // FX thread only, like everything here
+    private long pulseStart;
+
+    private Pane pane;
+    private SpriteSheet sheet;
+    private final List<Node> sprites = new ArrayList<>();
+    private final List<Timeline> timelines = new ArrayList<>();
+
+    public static void main(String[] args) {
+        legacy = args.length > 0 && args[0].equals("legacy");
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage stage) {
+        sheet = SpriteSheet.load("/sprites/zero.png", 8, 3, 24);
+        pane = new Pane();
+        Scene scene = new Scene(pane, 800, 600);
+        stage.setTitle("SpriteBench");
+        stage.setScene(scene);
+        stage.show();
+
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long fxThread = Thread.currentThread().getId();
+
+        scene.addPostLayoutPulseListener(() -> {
+            if (current >= 0) frameNs[current] = System.nanoTime() - pulseStart;
+        });
+
+        // Started before any sprite, so it runs first in every pulse
+        new AnimationTimer() {
+            int round = 0;
+            int pulse = 0;
+            long lastNow = 0;
+            long lastAlloc = 0;
+
+            @Override
+            public void handle(long now) {
+                long alloc = threads.getThreadAllocatedBytes(fxThread);
+                if (pulse == 0) spawn(COUNTS[round]);
+                int m = pulse - WARMUP;
+                if (m > 0 && m <= MEASURE) {
+                    allocBytes[m - 1] = alloc - lastAlloc;
+                    intervalNs[m - 1] = now - lastNow;
+                }
+                lastAlloc = alloc;
+                lastNow = now;
+
+                if (m == MEASURE) {
+                    current = -1;
+                    report(COUNTS[round]);
+                    clear();
+                    pulse = 0;
+                    if (++round == COUNTS.length) {
+                        stop();
+                        Platform.exit();
+                    }
+                    return;
+                }
+                current = m;
+                pulseStart = System.nanoTime();
+                pulse++;
+            }
+        }.start();
+    }
+
+    private void spawn(int n) {
+        for (int i = 0; i < n; i++) {
+            Node s;
+            if (legacy) {
+                s = legacySprite();
+            } else {
+                DancerSprite d = new DancerSprite(sheet, FPS, 0, 1);
+                d.startDancing();
+                s = d;
+            }
+            s.relocate((i % 10) * 80, (i / 10) * 110);
+            sprites.add(s);
+        }
+        pane.getChildren().setAll(sprites);
+    }
+
+    private void clear() {
+        for (Node s : sprites) if (s instanceof DancerSprite d) d.stopDancing();
+        timelines.forEach(Timeline::stop);
+        timelines.clear();
+        sprites.clear();
+        pane.getChildren().clear();
+    }
+
+    // What MainApp.initDancer did: its own Timeline, a new Rectangle2D per frame
+    private Node legacySprite() {
+        ImageView v = new ImageView(sheet.image);
+        int w = sheet.frameW, h = sheet.frameH;
+        v.setViewport(new Rectangle2D(0, 0, w, h));
+        v.setSmooth(false);
+        int[] idx = { 0 };
+        Timeline t = new Timeline(new KeyFrame(Duration.millis(1000 / FPS), e -> {
+            idx[0] = (idx[0] + 1) % 24;
+            v.setViewport(new Rectangle2D((idx[0] % 8) * w, (idx[0] / 8) * h, w, h));
+        }));
+        t.setCycleCount(Animation.INDEFINITE);
+        t.play();
+        timelines.add(t);
+        return v;
+    }
+
+    private void report(int n) {
+        System.out.printf("%s, %d sprite(s), %d pulses measured%n", legacy ? "Timeline per sprite" : "SpriteAnimator", n, MEASURE);
+        line("anim+css+layout (us)", frameNs, 1e-3);
+        line("pulse interval (ms)", intervalNs, 1e-6);
+        line("allocated (KB)", allocBytes, 1.0 / 1024);
+    }
+
+    private static void line(String what, long[] v, double scale) {
+        long[] s = v.clone();
+        Arrays.sort(s);
+        double mean = Arrays.stream(s).average().orElse(0);
+        System.out.printf("%-22s mean %9.2f  p50 %9.2f  p99 %9.2f  max %9.2f%n", what,
+                mean * scale, s[s.length / 2] * scale, s[(int) (s.length * 0.99)] * scale, s[s.length - 1] * scale);
+    }
+}
@@ -0,0 +1,191 @@
+package player;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Cover art for the player screen, decoded once at thumbnail size and kept in
+// an LRU that is bounded by decoded bytes rather than entry count.
+//
+// Keyed by album (folder + album tag), so moving between tracks of the same
+// album never decodes again. Embedded art (ID3 APIC / MP4 covr, located by
+// MetadataReader) is decoded on the art thread; folder.jpg and friends use
+// Image's own background loading. Nothing here blocks the FX thread.
+//
+// get/prefetch/close must be called on the FX thread; that is also where all
+// the bookkeeping happens, so the cache itself needs no locking.
+public class AlbumArtCache {
+    public static final int SIZE = 140;                   // albumArt's fit size
+    private static final long MAX_BYTES = 16L << 20;      // ~200 decoded 140x140 ARGB thumbnails
+    private static final long ENTRY_BYTES = 256;          // key and bookkeeping, so "no art" entries count too
+    private static final int MAX_EMBEDDED = 16 << 20;     // larger APIC frames are ignored
+    private static final String[] FOLDER_ART = {
+            "folder.jpg", "Folder.jpg", "cover.jpg", "Cover.jpg", "front.jpg", "Front.jpg",
+            "AlbumArt.jpg", "folder.png", "cover.png"
+    };
+
+    private static final class Entry {
+        Image image;          // null while loading, or when the album has no art
+        boolean done;
+        long bytes;
+        List<Consumer<Image>> waiting = new ArrayList<>();
+    }
+
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes = 0;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "album-art");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        return t;
+    });
+
+    // Calls onReady on the FX thread with t's art, or null if it has none.
+    // Runs right away when the album is already cached.
+    public void get(Track t, Consumer<Image> onReady) {
+        if (t.info() == null) {
+            // the album key needs the tags; read them off-thread and come back
+            worker.execute(() -> {
+                readInfo(t);
+                Platform.runLater(() -> get(t, onReady));
+            });
+            return;
+        }
+        Entry e = entry(t);
+        if (e.done) onReady.accept(e.image);
+        else e.waiting.add(onReady);
+    }
+
+    // Start decoding t's art so a later get() is a cache hit
+    public void prefetch(Track t) {
+        if (t == null) return;
+        if (t.info() == null) {
+            worker.execute(() -> {
+                readInfo(t);
+                Platform.runLater(() -> entry(t));
+            });
+            return;
+        }
+        entry(t);
+    }
+
+    public void close() {
+        worker.shutdownNow();
+    }
+
+    private Entry entry(Track t) {
+        String key = key(t);
+        Entry e = cache.get(key);
+        if (e == null) {
+            e = new Entry();
+            cache.put(key, e);
+            Entry target = e;
+            worker.execute(() -> load(t, target));
+        }
+        return e;
+    }
+
+    private static String key(Track t) {
+        String album = t.album();
+        return t.parent() + "\0" + (album != null ? album : "");
+    }
+
+    private static void readInfo(Track t) {
+        if (t.info() != null) return;
+        try {
+            t.setInfo(MetadataReader.read(t.path()));
+        } catch (IOException | RuntimeException e) {
+            t.setInfo(TrackInfo.EMPTY);
+        }
+    }
+
+    // ---------------- Art thread ----------------
+
+    private void load(Track t, Entry e) {
+        TrackInfo info = t.info();
+        if (info.hasArt() && info.artLength() <= MAX_EMBEDDED) {
+            try (FileChannel ch = FileChannel.open(t.path(), StandardOpenOption.READ)) {
+                ByteBuffer b = MetadataReader.readAt(ch, info.artOffset(), info.artLength());
+                Image img = new Image(new ByteArrayInputStream(b.array(), 0, b.limit()), SIZE, SIZE, true, true);
+                if (!img.isError()) {
+                    Platform.runLater(() -> finish(e, img));
+                    return;
+                }
+            } catch (IOException | RuntimeException ignored) {
+                // fall through to the folder image
+            }
+        }
+
+        Path file = folderArt(t.parent());
+        if (file == null) {
+            Platform.runLater(() -> finish(e, null));
+            return;
+        }
+        Image img = new Image(file.toUri().toString(), SIZE, SIZE, true, true, true);
+        Platform.runLater(() -> whenLoaded(img, e));
+    }
+
+    private static Path folderArt(Path dir) {
+        if (dir == null) return null;
+        for (String name : FOLDER_ART) {
+            Path p = dir.resolve(name);
+            if (Files.isRegularFile(p)) return p;
+        }
+        return null;
+    }
+
+    // ---------------- FX thread ----------------
+
+    private void whenLoaded(Image img, Entry e) {
+        if (img.getProgress() >= 1.0 || img.isError()) {
+            finish(e, img);
+            return;
+        }
+        img.progressProperty().addListener((obs, was, now) -> {
+            if (now.doubleValue() >= 1.0) finish(e, img);
+        });
+        img.errorProperty().addListener((obs, was, now) -> {
+            if (now) finish(e, img);
+        });
+    }
+
+    private void finish(Entry e, Image img) {
+        if (e.done) return;
+        if (img != null && img.isError()) img = null;
+
+        e.image = img;
+        e.done = true;
+        e.bytes = ENTRY_BYTES + ((img != null) ? (long) img.getWidth() * (long) img.getHeight() * 4 : 0);
+        bytes += e.bytes;
+
+        List<Consumer<Image>> waiting = e.waiting;
+        e.waiting = List.of();
+        for (Consumer<Image> c : waiting) c.accept(img);
+
+        evict(e);
+    }
+
+    // Drop least recently used albums until we're under budget again. Entries
+    // still loading cost nothing yet and are left alone.
+    private void evict(Entry keep) {
+        Iterator<Entry> it = cache.values().iterator();
+        while (bytes > MAX_BYTES && it.hasNext()) {
+            Entry old = it.next();
+            if (old == keep || !old.done) continue;
+            bytes -= old.bytes;
+            it.remove();
+        }
+    }
+}
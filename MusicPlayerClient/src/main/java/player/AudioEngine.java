@@ -0,0 +1,86 @@
+package player;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// What the CLI needs from a player: PlayerEngine (JavaFX MediaPlayer) or
+// HeadlessEngine (javax.sound, no FX toolkit). All calls block until done.
+public interface AudioEngine {
+    double MAX_CROSSFADE = 12.0; // seconds
+
+    // Told where playback is as it moves (often: every frame or buffer), on an
+    // engine thread (the FX thread for PlayerEngine). Keep it cheap.
+    interface PositionListener {
+        void moved(double seconds, double totalSeconds);
+    }
+
+    // Runs when a track ends and gapless didn't take over (engine's own thread)
+    void setOnEnd(Runnable onEnd);
+
+    // upcoming decides the next track without moving the playlist; onAdvance is
+    // told once that track really started. If it isn't ready in time, onEnd runs.
+    void setGapless(boolean on, Supplier<Track> upcoming, Consumer<Track> onAdvance);
+
+    // The caller's idea of "next" changed (loop/mix toggled, queue edited...)
+    void invalidateUpcoming();
+
+    void play(Track track);
+
+    void pause();
+
+    void resume();
+
+    void stop();
+
+    void seekSeconds(double seconds);
+
+    void setVolume(double v);
+
+    // Seconds the outgoing and incoming tracks overlap (0: none). Engines that
+    // can't play two at once ignore it.
+    default void setCrossfade(double seconds) {}
+
+    // "<prefix><name>  m:ss / m:ss", or "Nothing playing."
+    String nowPlaying(String labelPrefix, Track track);
+
+    default void printNowPlaying(String labelPrefix, Track track) {
+        System.out.println(nowPlaying(labelPrefix, track));
+    }
+
+    // Spectrum and beats of what's playing. spectrum() gets dB per band on every
+    // analysis frame (the array is the engine's, reused: read it there);
+    // beat() is called on each detected onset with the tempo so far (0 until
+    // known). Both allocation-free on the engine side. reset() says a new
+    // track started: the tempo is unknown again until its beats come in.
+    interface BeatListener {
+        default void spectrum(double seconds, float[] db) {}
+
+        void beat(double seconds, double bpm);
+
+        default void reset() {}
+    }
+
+    // null: no analysis at all. Backends that can't analyse never call it.
+    default void setBeatListener(BeatListener l) {}
+
+    // Replaces the position listener (null: none, so nothing is published).
+    // A new listener is told the current position right away.
+    void setPositionListener(PositionListener l);
+
+    // Underruns, buffer fill, decode time... (see PlaybackStats); any thread
+    default PlaybackStats stats() {
+        return PlaybackStats.media(0, 0);
+    }
+
+    double getCurrentSeconds();
+
+    double getTotalSeconds();
+
+    void shutdown();
+
+    static String fmt(double seconds) {
+        if (seconds < 0 || Double.isNaN(seconds) || Double.isInfinite(seconds)) return "--:--";
+        int sec = (int) Math.floor(seconds);
+        return String.format("%d:%02d", sec / 60, sec % 60);
+    }
+}
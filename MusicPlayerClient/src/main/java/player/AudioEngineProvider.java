@@ -0,0 +1,52 @@
+package player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+// A playback backend, found through ServiceLoader (listed in
+// META-INF/services/player.AudioEngineProvider). The CLI, the GUI and
+// EngineBench pick one by name, or the best available one, so a new backend
+// only needs a provider and that one line.
+public interface AudioEngineProvider {
+    // What --engine=<name> / -Dplayer.engine=<name> matches, e.g. "javafx"
+    String name();
+
+    // Which one to take when none is asked for: the highest available
+    int priority();
+
+    // False if it can't run here (no toolkit, no display, missing codecs...).
+    // May start whatever the engine needs; called once before create().
+    boolean isAvailable();
+
+    AudioEngine create();
+
+    static List<AudioEngineProvider> all() {
+        List<AudioEngineProvider> out = new ArrayList<>();
+        ServiceLoader.load(AudioEngineProvider.class).forEach(out::add);
+        return out;
+    }
+
+    // The provider called name (null/empty: the best available one)
+    static AudioEngineProvider find(String name) {
+        AudioEngineProvider best = null;
+        for (AudioEngineProvider p : all()) {
+            if (name != null && !name.isEmpty()) {
+                if (p.name().equals(name.toLowerCase(Locale.ROOT))) return p;
+            } else if ((best == null || p.priority() > best.priority()) && p.isAvailable()) {
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    // Engine from the named provider (or the best available one); throws if
+    // there is no such provider or it can't run here
+    static AudioEngine create(String name) {
+        AudioEngineProvider p = find(name);
+        if (p == null) throw new IllegalStateException((name == null || name.isEmpty()) ? "No playback engine available" : "Unknown engine: " + name);
+        if ((name != null && !name.isEmpty()) && !p.isAvailable()) throw new IllegalStateException("Engine not available here: " + p.name());
+        return p.create();
+    }
+}
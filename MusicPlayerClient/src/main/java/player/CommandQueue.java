@@ -0,0 +1,86 @@
+package player;
+
+import javafx.application.Platform;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Hands engine commands to the FX thread without blocking the caller.
+// Any number of threads may submit; the FX thread is the only consumer and
+// runs everything that piled up in one go, so a burst of commands costs one
+// Platform.runLater instead of one FX pulse each.
+//
+// Seek and volume only care about the latest value: if the command at the
+// tail of the queue is of the same kind it is replaced rather than queued
+// again, and both callers get the same future.
+final class CommandQueue {
+    enum Kind { OTHER, SEEK, VOLUME }
+
+    private static final class Cmd {
+        final Kind kind;
+        Supplier<?> action;
+        final CompletableFuture<Object> done = new CompletableFuture<>();
+
+        Cmd(Kind kind, Supplier<?> action) {
+            this.kind = kind;
+            this.action = action;
+        }
+    }
+
+    private final ArrayDeque<Cmd> pending = new ArrayDeque<>(); // guarded by this
+    private boolean scheduled = false;                          // guarded by this
+
+    CompletableFuture<Void> submit(Kind kind, Runnable action) {
+        return submit(kind, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> submit(Kind kind, Supplier<T> action) {
+        Cmd cmd;
+        boolean schedule = false;
+
+        synchronized (this) {
+            Cmd tail = pending.peekLast();
+            if (kind != Kind.OTHER && tail != null && tail.kind == kind) {
+                tail.action = action; // only the last seek / volume matters
+                cmd = tail;
+            } else {
+                cmd = new Cmd(kind, action);
+                pending.addLast(cmd);
+                if (!scheduled) {
+                    scheduled = true;
+                    schedule = true;
+                }
+            }
+        }
+
+        if (Platform.isFxApplicationThread()) {
+            drain(); // FX callers (the GUI) still see the effect immediately
+        } else if (schedule) {
+            Platform.runLater(this::drain);
+        }
+        return (CompletableFuture<T>) cmd.done;
+    }
+
+    private void drain() {
+        while (true) {
+            Cmd c;
+            synchronized (this) {
+                c = pending.pollFirst();
+                if (c == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            try {
+                c.done.complete(c.action.get());
+            } catch (Throwable t) {
+                c.done.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package player;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Lets scripts drive the player over a local socket: a loopback TCP port or a
+// Unix domain socket. One selector thread does all the I/O; commands go to a
+// Handler, which decides where they run (never on this thread's time: it
+// returns a future), so a slow command never holds up other connections.
+//
+// Protocol, UTF-8 lines. Requests are "<command> [args]" and may be pipelined;
+// replies come back in request order:
+//   +<text>            done
+//   *<n> + n lines     done, a list
+//   -<message>         failed
+// Connections that sent "subscribe" also get state changes as they happen,
+// between replies:
+//   !<event>           e.g. "!playing Song.mp3", "!paused", "!volume 0.5"
+// Built in: ping, subscribe, unsubscribe, quit.
+final class ControlServer implements AutoCloseable {
+    // The command word and the rest of the line (maybe ""). The reply text may
+    // have several lines. null, or a future failing with a message, is an error.
+    interface Handler {
+        CompletableFuture<String> handle(String command, String args);
+    }
+
+    private static final int MAX_LINE = 4096;
+    private static final int MAX_INFLIGHT = 1024; // per connection; reading pauses beyond this
+    private static final int MAX_OUT = 1 << 20;   // unsent bytes before a slow reader is dropped
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Handler handler;
+    private final Path socketFile; // Unix socket to delete on close; null for TCP
+    private final ByteBuffer in = ByteBuffer.allocateDirect(16384); // selector thread only
+    private final List<Conn> conns = new ArrayList<>();            // selector thread only
+    private final ConcurrentLinkedQueue<Conn> ready = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<String> events = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean woken = new AtomicBoolean();
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    // spec: a port number (0 = any free one) or "unix:<path>"
+    static ControlServer open(String spec, Handler handler) throws IOException {
+        if (spec.startsWith("unix:")) {
+            Path p = Path.of(spec.substring("unix:".length())).toAbsolutePath();
+            // a socket left behind by a crash; never a regular file someone put there
+            if (Files.exists(p) && !Files.isRegularFile(p) && !Files.isDirectory(p)) Files.delete(p);
+            ServerSocketChannel ch = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            ch.bind(UnixDomainSocketAddress.of(p));
+            return new ControlServer(ch, handler, p);
+        }
+        ServerSocketChannel ch = ServerSocketChannel.open();
+        ch.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec)));
+        return new ControlServer(ch, handler, null);
+    }
+
+    private ControlServer(ServerSocketChannel server, Handler handler, Path socketFile) throws IOException {
+        this.server = server;
+        this.handler = handler;
+        this.socketFile = socketFile;
+        this.selector = Selector.open();
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        thread = new Thread(this::loop, "control-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // "127.0.0.1:<port>" or "unix:<path>", for the user
+    String address() {
+        try {
+            SocketAddress a = server.getLocalAddress();
+            if (a instanceof InetSocketAddress i) return i.getAddress().getHostAddress() + ":" + i.getPort();
+            return "unix:" + a;
+        } catch (IOException e) {
+            return "?";
+        }
+    }
+
+    // Any thread; sent to every subscriber as "!<event>"
+    void publish(String event) {
+        if (closed) return;
+        events.add(event);
+        wakeup();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------------- Selector thread ----------------
+
+    private final class Conn {
+        final SocketChannel ch;
+        SelectionKey key;
+        final byte[] line = new byte[MAX_LINE];
+        int lineLength = 0;
+        boolean tooLong = false;
+        final ArrayDeque<CompletableFuture<String>> inflight = new ArrayDeque<>();
+        ByteBuffer out = ByteBuffer.allocate(8192); // [0, position) waits to be sent
+        boolean subscribed = false;
+        boolean readPaused = false;
+        boolean closing = false; // quit or EOF: close once the replies are out
+        final AtomicBoolean signalled = new AtomicBoolean();
+
+        Conn(SocketChannel ch) {
+            this.ch = ch;
+        }
+    }
+
+    private void loop() {
+        try {
+            while (!closed) {
+                selector.select();
+                woken.set(false); // before draining: a later completion wakes us again
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue;
+                    if (k.isAcceptable()) accept();
+                    else {
+                        Conn c = (Conn) k.attachment();
+                        try {
+                            if (k.isReadable()) read(c);
+                            if (k.isValid() && k.isWritable()) flush(c);
+                        } catch (IOException e) {
+                            drop(c);
+                        }
+                    }
+                }
+                for (Conn c; (c = ready.poll()) != null; ) {
+                    c.signalled.set(false);
+                    if (c.key.isValid()) reply(c);
+                }
+                for (String e; (e = events.poll()) != null; ) {
+                    for (int i = conns.size() - 1; i >= 0; i--) {
+                        Conn c = conns.get(i);
+                        if (!c.subscribed) continue;
+                        put(c, "!" + e);
+                        flushOrDrop(c);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) System.out.println("Control server stopped: " + e.getMessage());
+        } finally {
+            for (Conn c : new ArrayList<>(conns)) drop(c);
+            try { selector.close(); } catch (IOException ignored) {}
+            try { server.close(); } catch (IOException ignored) {}
+            if (socketFile != null) {
+                try { Files.deleteIfExists(socketFile); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            if (ch.getLocalAddress() instanceof InetSocketAddress) ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Conn c = new Conn(ch);
+            c.key = ch.register(selector, SelectionKey.OP_READ, c);
+            conns.add(c);
+        }
+    }
+
+    private void read(Conn c) throws IOException {
+        in.clear();
+        int n = c.ch.read(in);
+        if (n < 0) {
+            c.closing = true;
+            pauseReading(c);
+            reply(c);
+            return;
+        }
+        in.flip();
+        while (in.hasRemaining() && !c.closing) {
+            byte b = in.get();
+            if (b == '\n') {
+                int len = c.lineLength;
+                if (len > 0 && c.line[len - 1] == '\r') len--;
+                if (c.tooLong) request(c, CompletableFuture.failedFuture(new IllegalArgumentException("line too long")));
+                else if (len > 0) request(c, dispatch(c, new String(c.line, 0, len, StandardCharsets.UTF_8).trim()));
+                c.lineLength = 0;
+                c.tooLong = false;
+            } else if (c.lineLength < MAX_LINE) {
+                c.line[c.lineLength++] = b;
+            } else {
+                c.tooLong = true;
+            }
+        }
+        if (c.inflight.size() >= MAX_INFLIGHT) pauseReading(c); // the client waits in TCP, not in our memory
+        reply(c);
+    }
+
+    private CompletableFuture<String> dispatch(Conn c, String text) {
+        if (text.isEmpty()) return null;
+        int sp = text.indexOf(' ');
+        String cmd = (sp < 0) ? text : text.substring(0, sp);
+        String args = (sp < 0) ? "" : text.substring(sp + 1).trim();
+        switch (cmd) {
+            case "ping": return CompletableFuture.completedFuture("pong");
+            case "subscribe": c.subscribed = true; return CompletableFuture.completedFuture("subscribed");
+            case "unsubscribe": c.subscribed = false; return CompletableFuture.completedFuture("unsubscribed");
+            case "quit": c.closing = true; pauseReading(c); return CompletableFuture.completedFuture("bye");
+            default:
+        }
+        try {
+            CompletableFuture<String> f = handler.handle(cmd, args);
+            return (f != null) ? f : CompletableFuture.failedFuture(new IllegalArgumentException("unknown command: " + cmd));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void request(Conn c, CompletableFuture<String> f) {
+        if (f == null) return;
+        c.inflight.add(f);
+        if (!f.isDone()) f.whenComplete((r, e) -> signal(c));
+    }
+
+    // Any thread: a reply of c is done
+    private void signal(Conn c) {
+        if (c.signalled.compareAndSet(false, true)) {
+            ready.add(c);
+            wakeup();
+        }
+    }
+
+    private void wakeup() {
+        if (woken.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    // Sends the finished replies at the head of c's queue, in order
+    private void reply(Conn c) {
+        CompletableFuture<String> f;
+        while ((f = c.inflight.peek()) != null && f.isDone()) {
+            c.inflight.poll();
+            put(c, format(f));
+        }
+        if (c.readPaused && !c.closing && c.inflight.size() < MAX_INFLIGHT / 2) {
+            c.readPaused = false;
+            c.key.interestOps(c.key.interestOps() | SelectionKey.OP_READ);
+        }
+        flushOrDrop(c);
+    }
+
+    private static String format(CompletableFuture<String> f) {
+        String s;
+        try {
+            s = f.join();
+        } catch (CompletionException e) {
+            Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+            return "-" + oneLine(cause.getMessage() != null ? cause.getMessage() : cause.toString());
+        } catch (RuntimeException e) {
+            return "-" + oneLine(String.valueOf(e.getMessage()));
+        }
+        if (s == null || s.isEmpty()) return "+";
+        if (s.indexOf('\n') < 0) return "+" + s;
+        String[] lines = s.split("\n", -1);
+        return "*" + lines.length + "\n" + s;
+    }
+
+    private static String oneLine(String s) {
+        return s.replace('\n', ' ');
+    }
+
+    private static void put(Conn c, String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (c.out.remaining() < b.length + 1) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(c.out.capacity() * 2, c.out.position() + b.length + 1));
+            c.out.flip();
+            bigger.put(c.out);
+            c.out = bigger;
+        }
+        c.out.put(b).put((byte) '\n');
+    }
+
+    private void flushOrDrop(Conn c) {
+        try {
+            flush(c);
+        } catch (IOException e) {
+            drop(c);
+        }
+    }
+
+    private void flush(Conn c) throws IOException {
+        if (!c.key.isValid()) return;
+        c.out.flip();
+        c.ch.write(c.out);
+        c.out.compact();
+        boolean pending = c.out.position() > 0;
+        if (pending && c.out.position() > MAX_OUT) throw new IOException("client too slow");
+        int ops = c.key.interestOps();
+        c.key.interestOps(pending ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+        if (!pending && c.closing && c.inflight.isEmpty()) drop(c);
+    }
+
+    private static void pauseReading(Conn c) {
+        c.readPaused = true;
+        if (c.key.isValid()) c.key.interestOps(c.key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    private void drop(Conn c) {
+        conns.remove(c);
+        c.key.cancel();
+        try { c.ch.close(); } catch (IOException ignored) {}
+    }
+}
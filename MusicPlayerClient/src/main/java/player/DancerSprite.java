@@ -1,80 +1,74 @@
 package player;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
-import javafx.scene.canvas.Canvas;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import javafx.scene.layout.StackPane;
-import javafx.util.Duration;
-
-public class DancerSprite extends StackPane {
-
-    private final Image sheet;
-    private final Canvas canvas;
-    private final GraphicsContext g;
-    private final Timeline timeline;
-
-    private final int cols;
-    private final int frameW;
-    private final int frameH;
-    private final int frames;
+import javafx.scene.image.ImageView;
+
+// An animated sprite: plays a SpriteSheet's frames at a fixed rate while
+// dancing, and shows the idle frame otherwise. The frame follows the pulse
+// timestamp (SpriteAnimator), so a slow pulse skips frames rather than
+// slowing down; nothing is allocated per frame. setFps / onBeat retune and
+// re-phase it while it runs, to lock the dance to the music's beat.
+public class DancerSprite extends ImageView {
+    private final SpriteSheet sheet;
+    private long frameNanos;
     private final int idleFrame;
-    private int frame = 0;
-
-    public DancerSprite(String resourcePath,
-                        int sheetW, int sheetH,
-                        int cols, int rows,
-                        int frames, int idleFrame,
-                        int fps,
-                        int scale) {
-
-        this.cols = cols;
-        this.frameW = sheetW / cols;
-        this.frameH = sheetH / rows;
-        this.frames = frames;
+    private long start = -1; // pulse time of frame 0, -1 until the first pulse
+    private int frame = -1;
+    private long lastNow = -1; // last pulse time seen
+    int slot = -1;           // index in SpriteAnimator, -1 when idle
+
+    DancerSprite(SpriteSheet sheet, double fps, int idleFrame, double scale) {
+        super(sheet.image);
+        this.sheet = sheet;
+        this.frameNanos = (long) (1e9 / fps);
         this.idleFrame = idleFrame;
+        setSmooth(false); // pixel art
+        setFitWidth(sheet.frameW * scale);
+        setFitHeight(sheet.frameH * scale);
+        show(idleFrame);
+    }
 
-        this.sheet = new Image(getClass().getResourceAsStream(resourcePath));
-
-        this.canvas = new Canvas(frameW * (double) scale, frameH * (double) scale);
-        this.g = canvas.getGraphicsContext2D();
-        this.g.setImageSmoothing(false);
-
-        setSnapToPixel(true);
-        getChildren().add(canvas);
-
-        drawFrame(idleFrame, scale);
+    public void startDancing() {
+        if (slot >= 0) return;
+        start = -1;
+        SpriteAnimator.shared().add(this);
+    }
 
-        timeline = new Timeline(new KeyFrame(Duration.millis(1000.0 / fps), e -> {
-            frame = (frame + 1) % frames;
-            drawFrame(frame, scale);
-        }));
-        timeline.setCycleCount(Animation.INDEFINITE);
+    public void stopDancing() {
+        SpriteAnimator.shared().remove(this);
+        show(idleFrame);
     }
 
-    private void drawFrame(int i, int scale) {
-        int col = i % cols;
-        int row = i / cols;
+    public boolean isDancing() {
+        return slot >= 0;
+    }
 
-        double sx = col * frameW;
-        double sy = row * frameH;
+    // Changes the rate without a jump: the frame on show stays where it is
+    public void setFps(double fps) {
+        long nanos = (long) (1e9 / fps);
+        if (nanos == frameNanos) return;
+        if (start >= 0) start = lastNow - (long) ((double) (lastNow - start) / frameNanos * nanos);
+        frameNanos = nanos;
+    }
 
-        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
-        g.drawImage(sheet,
-                sx, sy, frameW, frameH,          // source rect
-                0, 0, frameW * scale, frameH * scale // dest rect
-        );
+    // A beat was just heard: moves the phase to the nearest multiple of
+    // framesPerBeat, so the sheet's accents land on beats
+    public void onBeat(int framesPerBeat) {
+        if (start < 0) return;
+        double frames = (double) (lastNow - start) / frameNanos;
+        long beats = Math.round(frames / framesPerBeat);
+        start = lastNow - beats * framesPerBeat * frameNanos;
     }
 
-    public void startDancing() {
-        if (timeline.getStatus() != Animation.Status.RUNNING) timeline.play();
+    // From SpriteAnimator, every pulse
+    void advance(long now) {
+        lastNow = now;
+        if (start < 0) start = now;
+        int f = (int) (((now - start) / frameNanos) % sheet.frames());
+        if (f != frame) show(f);
     }
 
-    public void stopDancing() {
-        timeline.stop();
-        frame = idleFrame;
-        drawFrame(idleFrame, (int)(canvas.getWidth() / frameW));
+    private void show(int f) {
+        frame = f;
+        setViewport(sheet.viewport(f));
     }
 }
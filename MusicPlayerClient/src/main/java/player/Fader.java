@@ -0,0 +1,165 @@
+package player;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+// Volume ramps for PlayerEngine, stepped on the FX pulse by one AnimationTimer
+// that only runs while something is ramping (like SpriteAnimator). FX thread only.
+//
+// Each Voice is one thing making sound (a MediaPlayer, a HeadlessEngine) with
+// a level from 0 (silent) to 1 (full) that moves linearly in time; what it's
+// told is master * sin(level * pi/2). Two voices ramping opposite ways over
+// the same time therefore keep the same total power: a crossfade with no dip
+// in the middle. The master volume ramps too, so a volume change is a short
+// glide rather than a jump.
+final class Fader {
+    private Voice[] ramping = new Voice[4];
+    private int count = 0;
+    private Voice[] voices = new Voice[4]; // every live voice: the master applies to all
+    private int live = 0;
+
+    private double master;
+    private double masterFrom, masterTo;
+    private long masterStart, masterNanos; // masterNanos 0: not ramping
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            step(now);
+        }
+    };
+
+    Fader(double master) {
+        this.master = master;
+    }
+
+    final class Voice {
+        private final DoubleConsumer volume;
+        private double level;
+        private double from, to;
+        private long start, nanos; // start 0: set on the next pulse
+        private Runnable then;
+        private int slot = -1;     // in ramping
+        private int liveSlot = -1; // in voices
+
+        private Voice(DoubleConsumer volume, double level) {
+            this.volume = volume;
+            this.level = level;
+        }
+
+        // Ramps to level over seconds, then runs then (if it got there: a later
+        // ramp or set replaces this one, then and all)
+        void rampTo(double level, double seconds, Runnable then) {
+            if (liveSlot < 0) return;
+            if (seconds <= 0 || this.level == level) {
+                set(level);
+                if (then != null) then.run();
+                return;
+            }
+            from = this.level;
+            to = level;
+            start = 0;
+            nanos = (long) (seconds * 1e9 * Math.abs(to - from)); // part way there already: less to go
+            this.then = then;
+            addRamping(this);
+        }
+
+        void set(double level) {
+            this.level = level;
+            then = null;
+            removeRamping(this);
+            apply();
+        }
+
+        double level() {
+            return level;
+        }
+
+        // Not driven anymore (the player is gone)
+        void drop() {
+            then = null;
+            removeRamping(this);
+            if (liveSlot < 0) return;
+            Voice last = voices[--live];
+            voices[liveSlot] = last;
+            last.liveSlot = liveSlot;
+            voices[live] = null;
+            liveSlot = -1;
+        }
+
+        private void apply() {
+            volume.accept(master * Math.sin(level * Math.PI / 2));
+        }
+    }
+
+    Voice voice(DoubleConsumer volume, double level) {
+        Voice v = new Voice(volume, level);
+        if (live == voices.length) voices = Arrays.copyOf(voices, live * 2);
+        v.liveSlot = live;
+        voices[live++] = v;
+        v.apply();
+        return v;
+    }
+
+    // Glides every voice to the new master volume
+    void setMaster(double v, double seconds) {
+        if (seconds <= 0) {
+            master = v;
+            masterNanos = 0;
+            for (int i = 0; i < live; i++) voices[i].apply();
+            return;
+        }
+        masterFrom = master;
+        masterTo = v;
+        masterStart = 0;
+        masterNanos = (long) (seconds * 1e9);
+        timer.start();
+    }
+
+    private void addRamping(Voice v) {
+        if (v.slot >= 0) return;
+        if (count == ramping.length) ramping = Arrays.copyOf(ramping, count * 2);
+        v.slot = count;
+        ramping[count++] = v;
+        timer.start();
+    }
+
+    private void removeRamping(Voice v) {
+        int i = v.slot;
+        if (i < 0) return;
+        Voice last = ramping[--count];
+        ramping[i] = last;
+        last.slot = i;
+        ramping[count] = null;
+        v.slot = -1;
+    }
+
+    private void step(long now) {
+        if (masterNanos > 0) {
+            if (masterStart == 0) masterStart = now;
+            double t = Math.min(1.0, (now - masterStart) / (double) masterNanos);
+            master = masterFrom + (masterTo - masterFrom) * t;
+            if (t >= 1.0) masterNanos = 0;
+            for (int i = 0; i < live; i++) if (voices[i].slot < 0) voices[i].apply();
+        }
+        // Backwards: a finished voice leaves its slot to the last one, and its
+        // then may drop voices or start ramps of its own
+        for (int i = count - 1; i >= 0; i--) {
+            if (i >= count) continue;
+            Voice v = ramping[i];
+            if (v.start == 0) v.start = now;
+            double t = Math.min(1.0, (now - v.start) / (double) Math.max(1, v.nanos));
+            v.level = v.from + (v.to - v.from) * t;
+            v.apply();
+            if (t >= 1.0) {
+                Runnable then = v.then;
+                v.then = null;
+                removeRamping(v);
+                if (then != null) then.run();
+            }
+        }
+        if (count == 0 && masterNanos == 0) timer.stop();
+    }
+}
@@ -0,0 +1,304 @@
+package player;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Batch job that decodes every track of the library and stores its features
+// (tempo, loudness, energy curve) in a FeatureStore. Tracks already there with
+// the same mtime are skipped, so a re-run only looks at new or changed files.
+//
+// Tracks are decoded on a small fixed pool; at most QUEUED are handed over at
+// a time, the submitting thread waits for a free permit before the next one
+// (back-pressure: a million-track library never sits in the executor's queue).
+// Decoding goes through the same javax.sound path as HeadlessEngine, so WAV /
+// AIFF / AU always work and other formats if a sound SPI for them is around.
+//
+// Per track, on mono PCM:
+//   tempo:    a 1024-point spectrum every 20 ms, 64 bands, as MediaPlayer's
+//             spectrum listener would report it, through the OnsetDetector the
+//             dancer uses during playback
+//   loudness: ReplayGain-style (unweighted): the 95th percentile of 50 ms RMS
+//             blocks; gainDb brings that to REFERENCE_DB
+//   energy:   mean power of the blocks in ENERGY_POINTS equal parts of the track
+final class FeatureAnalyzer implements AutoCloseable {
+    static final float REFERENCE_DB = -14f;
+
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int QUEUED = THREADS * 2;
+    private static final int CHUNK = 16384;
+    private static final double HOP_SECONDS = 0.02;   // same as PlayerEngine's spectrum interval
+    private static final double BLOCK_SECONDS = 0.05;
+    private static final int FFT = 1024;
+    private static final int BANDS = 64;
+    private static final float FLOOR_DB = -60f;
+    private static final double LOUD_PERCENTILE = 0.95;
+
+    // Hann window and twiddles, shared by every worker
+    private static final float[] WINDOW = new float[FFT];
+    private static final float[] COS = new float[FFT / 2];
+    private static final float[] SIN = new float[FFT / 2];
+    static {
+        for (int i = 0; i < FFT; i++) WINDOW[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FFT));
+        for (int i = 0; i < FFT / 2; i++) {
+            COS[i] = (float) Math.cos(-2 * Math.PI * i / FFT);
+            SIN[i] = (float) Math.sin(-2 * Math.PI * i / FFT);
+        }
+    }
+
+    // analyzed + upToDate + unsupported + failed = tracks looked at
+    record Report(int analyzed, int upToDate, int unsupported, int failed, double audioSeconds, long nanos) {
+        double tracksPerSecond() {
+            return (nanos > 0) ? analyzed * 1e9 / nanos : 0;
+        }
+
+        // seconds of audio per second of analysis
+        double speed() {
+            return (nanos > 0) ? audioSeconds * 1e9 / nanos : 0;
+        }
+    }
+
+    private final FeatureStore store;
+    private final ExecutorService pool;
+
+    FeatureAnalyzer(FeatureStore store) {
+        this.store = store;
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "features-" + n.getAndIncrement());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY); // playback comes first
+            return t;
+        });
+    }
+
+    FeatureStore store() {
+        return store;
+    }
+
+    // tracks: the whole library (tracks no longer in it are dropped from the
+    // store). Runs in the background; the store is saved when it's done.
+    CompletableFuture<Report> analyze(List<Track> tracks) {
+        return CompletableFuture.supplyAsync(() -> run(tracks), r -> {
+            Thread t = new Thread(r, "features-submit");
+            t.setDaemon(true);
+            t.start();
+        });
+    }
+
+    private Report run(List<Track> tracks) {
+        long t0 = System.nanoTime();
+        Semaphore permits = new Semaphore(QUEUED);
+        AtomicInteger analyzed = new AtomicInteger(), unsupported = new AtomicInteger(), failed = new AtomicInteger();
+        AtomicLong audioMillis = new AtomicLong();
+        int upToDate = 0;
+        Set<String> keys = new HashSet<>(tracks.size() * 2);
+        AtomicBoolean stop = new AtomicBoolean(); // interrupted: tasks not started yet skip their track
+        boolean complete = false;
+
+        try {
+            for (Track t : tracks) {
+                keys.add(store.key(t));
+                long modified = FeatureStore.modified(t);
+                if (store.get(t, modified) != null) {
+                    upToDate++;
+                    continue;
+                }
+                permits.acquire();
+                pool.execute(() -> {
+                    if (stop.get()) {
+                        permits.release();
+                        return;
+                    }
+                    try (AudioInputStream in = HeadlessEngine.open(t)) {
+                        TrackFeatures f = measure(in, audioMillis);
+                        store.put(t, modified, f);
+                        analyzed.incrementAndGet();
+                    } catch (UnsupportedAudioFileException e) {
+                        unsupported.incrementAndGet();
+                    } catch (IOException | RuntimeException e) {
+                        failed.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            complete = true;
+        } catch (InterruptedException e) {
+            stop.set(true);
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            stop.set(true); // closed
+        }
+        awaitIdle(permits);
+
+        // Stopped early, keys has only the tracks reached so far: dropping the
+        // rest would throw away their features
+        if (complete) store.retain(keys);
+        if (store.isChanged()) {
+            try { store.save(); }
+            catch (IOException e) { System.out.println("Could not save track features: " + e.getMessage()); }
+        }
+        return new Report(analyzed.get(), upToDate, unsupported.get(), failed.get(),
+                audioMillis.get() / 1000.0, System.nanoTime() - t0);
+    }
+
+    // Waits for the tracks already handed over, so none of them puts while the
+    // store is saved; interrupts don't cut it short. Ends anyway once the pool
+    // is shut down (close): tasks dropped there never give their permit back.
+    private void awaitIdle(Semaphore permits) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    if (permits.tryAcquire(QUEUED, 100, TimeUnit.MILLISECONDS)) {
+                        permits.release(QUEUED);
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                if (pool.isTerminated()) return;
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    // ---------------- Per track ----------------
+
+    // in: 16-bit signed LE PCM (HeadlessEngine.open). Adds the audio's length to audioMillis.
+    static TrackFeatures measure(AudioInputStream in, AtomicLong audioMillis) throws IOException {
+        AudioFormat f = in.getFormat();
+        int channels = f.getChannels();
+        int frameSize = f.getFrameSize();
+        float rate = f.getSampleRate();
+        int hop = Math.max(1, Math.round(rate * (float) HOP_SECONDS));
+        int blockFrames = Math.max(1, Math.round(rate * (float) BLOCK_SECONDS));
+
+        byte[] b = new byte[CHUNK / frameSize * frameSize];
+        float[] recent = new float[FFT]; // last FFT mono samples, a ring
+        float[] re = new float[FFT], im = new float[FFT];
+        float[] db = new float[BANDS];
+        OnsetDetector onsets = new OnsetDetector(BANDS, FLOOR_DB);
+
+        float[] blocks = new float[1024]; // mean square per block
+        int blockCount = 0;
+        double blockSum = 0;
+        int inBlock = 0, sinceHop = 0, at = 0;
+        long frames = 0;
+        float scale = 1f / (32768f * channels);
+
+        int n;
+        while ((n = in.read(b)) > 0) {
+            for (int i = 0; i + frameSize <= n; i += frameSize) {
+                float mono = 0, sq = 0;
+                for (int c = 0; c < channels; c++) {
+                    int j = i + 2 * c;
+                    float s = (short) ((b[j] & 0xFF) | (b[j + 1] << 8));
+                    mono += s;
+                    sq += s * s;
+                }
+                recent[at] = mono * scale;
+                at = (at + 1) & (FFT - 1);
+                blockSum += sq / (32768f * 32768f * channels);
+                frames++;
+
+                if (++inBlock == blockFrames) {
+                    if (blockCount == blocks.length) blocks = Arrays.copyOf(blocks, blockCount * 2);
+                    blocks[blockCount++] = (float) (blockSum / blockFrames);
+                    blockSum = 0;
+                    inBlock = 0;
+                }
+                if (++sinceHop == hop && frames >= FFT) {
+                    spectrum(recent, at, re, im, db);
+                    onsets.process(frames / (double) rate, db);
+                }
+                if (sinceHop >= hop) sinceHop = 0;
+            }
+        }
+        if (blockCount == 0) throw new IOException("no audio");
+        audioMillis.addAndGet((long) (frames * 1000 / rate));
+
+        float[] sorted = Arrays.copyOf(blocks, blockCount);
+        Arrays.sort(sorted);
+        float loudness = toDb(sorted[Math.min(blockCount - 1, (int) (blockCount * LOUD_PERCENTILE))]);
+
+        byte[] energy = new byte[TrackFeatures.ENERGY_POINTS];
+        for (int p = 0; p < energy.length; p++) {
+            int lo = (int) ((long) p * blockCount / energy.length);
+            int hi = Math.max(lo + 1, (int) ((long) (p + 1) * blockCount / energy.length));
+            double sum = 0;
+            for (int i = lo; i < hi; i++) sum += blocks[i];
+            float e = (toDb((float) (sum / (hi - lo))) - TrackFeatures.ENERGY_FLOOR_DB) / -TrackFeatures.ENERGY_FLOOR_DB;
+            energy[p] = (byte) Math.round(Math.max(0f, Math.min(1f, e)) * 255);
+        }
+        return new TrackFeatures((float) onsets.bpm(), loudness, REFERENCE_DB - loudness, energy);
+    }
+
+    private static float toDb(float meanSquare) {
+        return (meanSquare > 1e-12f) ? (float) (10 * Math.log10(meanSquare)) : -120f;
+    }
+
+    // dB per band of the windowed ring (oldest sample at 'at'), full-scale
+    // sine = 0 dB, quieter than FLOOR_DB reads as FLOOR_DB
+    private static void spectrum(float[] ring, int at, float[] re, float[] im, float[] db) {
+        for (int i = 0; i < FFT; i++) {
+            re[i] = ring[(at + i) & (FFT - 1)] * WINDOW[i];
+            im[i] = 0;
+        }
+        fft(re, im);
+        int perBand = FFT / 2 / BANDS;
+        float norm = 4f / FFT; // Hann window: a sine of amplitude A peaks at A * FFT / 4
+        for (int k = 0; k < BANDS; k++) {
+            float p = 0;
+            for (int i = k * perBand; i < (k + 1) * perBand; i++) {
+                float x = re[i] * norm, y = im[i] * norm;
+                p = Math.max(p, x * x + y * y);
+            }
+            db[k] = Math.max(FLOOR_DB, toDb(p));
+        }
+    }
+
+    // In-place radix-2 FFT of length FFT
+    private static void fft(float[] re, float[] im) {
+        for (int i = 1, j = 0; i < FFT; i++) {
+            int bit = FFT >> 1;
+            for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                float t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int len = 2; len <= FFT; len <<= 1) {
+            int step = FFT / len;
+            for (int i = 0; i < FFT; i += len) {
+                for (int k = 0; k < len / 2; k++) {
+                    float wr = COS[k * step], wi = SIN[k * step];
+                    int a = i + k, c = a + len / 2;
+                    float xr = re[c] * wr - im[c] * wi;
+                    float xi = re[c] * wi + im[c] * wr;
+                    re[c] = re[a] - xr;
+                    im[c] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
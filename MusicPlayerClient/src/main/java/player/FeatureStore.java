@@ -0,0 +1,149 @@
+package player;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Audio features of a library's tracks (see FeatureAnalyzer), kept next to its
+// LibraryIndex. Keyed by the path under the library root and the file's mtime:
+// a track that was edited or replaced no longer matches and is analysed again.
+//
+// File layout (big-endian):
+//   int magic, int version, str root, int count,
+//   count x { str relPath, long mtime, float bpm, float loudnessDb, float gainDb,
+//             byte[ENERGY_POINTS] energy }
+//   str = unsigned short byte length + UTF-8 bytes
+public class FeatureStore {
+    private static final int MAGIC = 0x4D504654; // "MPFT"
+    private static final int VERSION = 1;
+
+    private record Entry(long modified, TrackFeatures features) {}
+
+    private final Path root;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean changed = false;
+
+    FeatureStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    // ~/.musicplayer/features-<hash>.bin, same hash as the library index
+    static Path fileFor(Path root) {
+        String abs = root.toAbsolutePath().normalize().toString();
+        return LibraryIndex.cacheDir().resolve("features-" + Integer.toHexString(abs.hashCode()) + ".bin");
+    }
+
+    // The file's mtime as it is now. Track.modified() may be from the last scan
+    // (folders reused from the LibraryIndex), and editing a file in place
+    // doesn't touch its folder's mtime; that's only the fallback.
+    static long modified(Track t) {
+        try {
+            return Files.getLastModifiedTime(t.path()).toMillis();
+        } catch (IOException | RuntimeException e) {
+            return t.modified();
+        }
+    }
+
+    // null if t wasn't analysed, or was changed since
+    public TrackFeatures get(Track t) {
+        return get(t, modified(t));
+    }
+
+    // modified: from modified(t)
+    public TrackFeatures get(Track t, long modified) {
+        Entry e = entries.get(key(t));
+        return (e != null && e.modified() == modified) ? e.features() : null;
+    }
+
+    // modified: the mtime taken before f was measured, so a change made
+    // meanwhile still shows as one next time
+    public void put(Track t, long modified, TrackFeatures f) {
+        entries.put(key(t), new Entry(modified, f));
+        changed = true;
+    }
+
+    // Drops tracks that are gone from the library
+    public void retain(Set<String> keys) {
+        if (entries.keySet().retainAll(keys)) changed = true;
+    }
+
+    public int size() { return entries.size(); }
+    public boolean isChanged() { return changed; }
+
+    String key(Track t) {
+        Path p = t.path().toAbsolutePath().normalize();
+        return p.startsWith(root) ? root.relativize(p).toString() : p.toString();
+    }
+
+    // Never throws: a missing or corrupt file just means everything is analysed again
+    static FeatureStore load(Path root) {
+        FeatureStore fs = new FeatureStore(root);
+        Path file = fileFor(root);
+        if (!Files.isRegularFile(file)) return fs;
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return fs;
+            if (!fs.root.toString().equals(readStr(buf))) return fs; // hash collision
+
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++) {
+                String key = readStr(buf);
+                long modified = buf.getLong();
+                float bpm = buf.getFloat(), loudness = buf.getFloat(), gain = buf.getFloat();
+                byte[] energy = new byte[TrackFeatures.ENERGY_POINTS];
+                buf.get(energy);
+                fs.entries.put(key, new Entry(modified, new TrackFeatures(bpm, loudness, gain, energy)));
+            }
+        } catch (IOException | RuntimeException e) {
+            return new FeatureStore(root);
+        }
+        return fs;
+    }
+
+    // Temp file first, like LibraryIndex.save
+    public synchronized void save() throws IOException {
+        Path file = fileFor(root);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeStr(out, root.toString());
+            Map<String, Entry> snapshot = Map.copyOf(entries);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> e : snapshot.entrySet()) {
+                TrackFeatures f = e.getValue().features();
+                writeStr(out, e.getKey());
+                out.writeLong(e.getValue().modified());
+                out.writeFloat(f.bpm());
+                out.writeFloat(f.loudnessDb());
+                out.writeFloat(f.gainDb());
+                out.write(f.energy(), 0, TrackFeatures.ENERGY_POINTS);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        changed = false;
+    }
+
+    private static String readStr(ByteBuffer buf) {
+        byte[] b = new byte[Short.toUnsignedInt(buf.getShort())];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStr(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length >= 0xFFFF) throw new IOException("Path too long for feature file: " + s);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+}
@@ -0,0 +1,51 @@
+package player;
+
+import javafx.application.Platform;
+
+import java.util.concurrent.CountDownLatch;
+
+// PlayerEngine: JavaFX MediaPlayer, plays everything JavaFX media does
+public final class FxEngineProvider implements AudioEngineProvider {
+    private Boolean available;
+
+    @Override
+    public String name() {
+        return "javafx";
+    }
+
+    @Override
+    public int priority() {
+        return 100;
+    }
+
+    // Starts the FX runtime (no window needed) unless the GUI already did.
+    // False when there's no toolkit to start, e.g. no display.
+    @Override
+    public synchronized boolean isAvailable() {
+        if (available == null) available = startFx();
+        return available;
+    }
+
+    @Override
+    public AudioEngine create() {
+        return new PlayerEngine();
+    }
+
+    private static boolean startFx() {
+        CountDownLatch fx = new CountDownLatch(1);
+        try {
+            Platform.startup(fx::countDown);
+        } catch (IllegalStateException e) {
+            return true; // already running (MainApp)
+        } catch (RuntimeException | LinkageError e) {
+            return false;
+        }
+        try {
+            fx.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+}
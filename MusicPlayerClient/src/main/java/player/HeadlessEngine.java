@@ -0,0 +1,547 @@
+package player;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// CLI player that doesn't need the JavaFX toolkit (or a display): decodes with
+// javax.sound.sampled and plays through a SourceDataLine. Out of the box that
+// means WAV / AIFF / AU (PCM); other formats play if a sound SPI for them is
+// on the classpath.
+//
+// Per track there are two threads: a decoder that converts to 16-bit PCM and
+// fills a fixed-size PcmRing, and an output thread that moves it from there
+// to the line, applying the volume on the way. In gapless mode the decoder
+// asks for the next track once the current one is fully decoded and, if it has
+// the same format, carries on into the same ring and line: no gap at all.
+// onEnd / onAdvance are called on one "headless-events" thread.
+//
+// PCM WAV files skip all that: they're memory-mapped (WavFile) and the output
+// thread copies slices from the mapping into the line, with no decoder thread
+// or ring, and nothing allocated per slice. Seeking in them only moves an
+// offset; the line stays open. Gapless carries on into the next WAV if it has
+// the same format.
+//
+// Buffering trades latency for resilience on a loaded machine; "stats" shows
+// whether it's enough (underruns) or could shrink (lowest fill, decode time):
+//   -Dplayer.bufferMs=1500   decoded audio between the decoder and the output thread
+//   -Dplayer.refill=50       % of that left when the decoder wakes up to top it up
+//   -Dplayer.lineMs=200      the sound line's own buffer
+public final class HeadlessEngine implements AudioEngine {
+    private static final int BUFFER_MS = Math.max(50, Integer.getInteger("player.bufferMs", 1500));
+    private static final int REFILL_PERCENT = Math.max(0, Math.min(90, Integer.getInteger("player.refill", 50)));
+    private static final int LINE_MS = Math.max(10, Integer.getInteger("player.lineMs", 200));
+    private static final int CHUNK = 4096;
+
+    // A track as heard through a session's line. startByte is where it begins
+    // in the ring's byte stream, firstFrame the frame of the file it starts at.
+    private record Segment(Track track, long startByte, long firstFrame, long totalFrames) {}
+
+    private final ExecutorService events = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "headless-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Runnable onEnd;
+    private volatile boolean gapless = false;
+    private volatile Supplier<Track> upcoming;
+    private volatile Consumer<Track> onAdvance;
+    private volatile double volume = 1.0;
+    private volatile PositionListener positionListener;
+
+    // Playback metrics, from every session (see stats). Engines can share one:
+    // PlayerEngine has a new engine per WAV it fades out.
+    static final class Metrics {
+        private final LongAdder underruns = new LongAdder();
+        private final LongAdder lineUnderruns = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder decodedChunks = new LongAdder();
+        private final LongAdder decodeNanos = new LongAdder();
+        private final AtomicLong decodeMaxNanos = new AtomicLong();
+
+        private void decoded(long nanos) {
+            decodedChunks.increment();
+            decodeNanos.add(nanos);
+            decodeMaxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        // ring / format: what's playing, or null
+        PlaybackStats snapshot(PcmRing ring, AudioFormat format) {
+            long chunks = decodedChunks.sum();
+            double chunkMs = (format != null) ? (CHUNK / format.getFrameSize()) * 1000.0 / format.getFrameRate() : 0;
+            return new PlaybackStats(underruns.sum(), lineUnderruns.sum(), errors.sum(), BUFFER_MS, REFILL_PERCENT, LINE_MS,
+                    ring != null ? ring.fill() : Double.NaN, ring != null ? ring.lowestFill() : Double.NaN,
+                    chunks, chunks > 0 ? decodeNanos.sum() / 1e6 / chunks : 0, decodeMaxNanos.get() / 1e6, chunkMs);
+        }
+    }
+
+    private final Metrics metrics;
+
+    private Session session; // guarded by this; null when nothing is playing
+    private Track stopped;   // guarded by this; what stop() stopped, for resume()
+
+    public HeadlessEngine() {
+        this(new Metrics());
+    }
+
+    HeadlessEngine(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void setOnEnd(Runnable onEnd) {
+        this.onEnd = onEnd;
+    }
+
+    @Override
+    public void setGapless(boolean on, Supplier<Track> upcoming, Consumer<Track> onAdvance) {
+        this.upcoming = upcoming;
+        this.onAdvance = onAdvance;
+        this.gapless = on;
+    }
+
+    // The next track is only picked once the current one is fully decoded, about
+    // a ring's worth (~1.5 s) before it's heard; up to then nothing is cached,
+    // and past that point the pick stands.
+    @Override
+    public void invalidateUpcoming() {
+    }
+
+    @Override
+    public synchronized void play(Track track) {
+        stopped = null;
+        start(track, 0, false);
+    }
+
+    @Override
+    public synchronized void pause() {
+        if (session == null) return;
+        session.paused = true;
+        session.line.stop();
+    }
+
+    @Override
+    public synchronized void resume() {
+        if (session == null) {
+            if (stopped != null) play(stopped); // after stop(): from the top, like MediaPlayer
+            return;
+        }
+        session.paused = false;
+        session.line.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (session != null) stopped = session.playing.track();
+        closeSession();
+    }
+
+    // A mapped WAV just moves its offset; streams reopen the track at the new
+    // position (a PCM stream can only skip forward)
+    @Override
+    public synchronized void seekSeconds(double seconds) {
+        if (session == null) return;
+        Segment seg = session.playing;
+        long frame = (long) (Math.max(0, seconds) * session.format.getFrameRate());
+        if (seg.totalFrames() > 0) frame = Math.min(frame, seg.totalFrames());
+        if (session.mapped) session.seek(frame);
+        else start(seg.track(), frame, session.paused);
+    }
+
+    @Override
+    public void setVolume(double v) {
+        volume = Math.max(0.0, Math.min(1.0, v));
+    }
+
+    @Override
+    public synchronized String nowPlaying(String labelPrefix, Track track) {
+        if (session == null || track == null) return "Nothing playing.";
+        return labelPrefix + track.displayName()
+                + "  " + AudioEngine.fmt(getCurrentSeconds()) + " / " + AudioEngine.fmt(getTotalSeconds())
+                + (session.paused ? " (paused)" : "");
+    }
+
+    @Override
+    public synchronized void setPositionListener(PositionListener l) {
+        positionListener = l;
+        if (l != null && session != null) session.publish();
+    }
+
+    @Override
+    public synchronized double getCurrentSeconds() {
+        return (session == null) ? 0.0 : session.position();
+    }
+
+    @Override
+    public synchronized double getTotalSeconds() {
+        return (session == null) ? 0.0 : session.total();
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        closeSession();
+        events.shutdownNow();
+    }
+
+    // ---------------- Sessions ----------------
+
+    // One line and its decoder/output threads, from play (or seek) to the end
+    // of the last track it played gaplessly
+    private final class Session {
+        final AudioFormat format;
+        final int frameSize;
+        final SourceDataLine line;
+        final PcmRing ring;    // stream sessions
+        final boolean mapped;  // mapped WAV sessions: no ring, wav instead
+        private WavFile wav;   // output thread only
+        final ConcurrentLinkedQueue<Segment> pending = new ConcurrentLinkedQueue<>(); // decoded, not heard yet
+        volatile Segment playing;
+        volatile long segmentLineFrame = 0; // line frame where playing began
+        volatile long seekTo = -1;          // mapped: frame the output thread should go to
+        volatile boolean paused;
+        volatile boolean closed = false;
+
+        // Exactly one of in / wav
+        Session(Segment first, AudioInputStream in, WavFile wav, SourceDataLine line, boolean paused) {
+            this.format = (wav != null) ? wav.format : in.getFormat();
+            this.frameSize = format.getFrameSize();
+            this.line = line;
+            this.mapped = wav != null;
+            this.wav = wav;
+            if (mapped) {
+                this.ring = null;
+            } else {
+                int bytes = Math.max(2 * CHUNK, bytes(BUFFER_MS));
+                this.ring = new PcmRing(bytes, bytes / 100 * REFILL_PERCENT, metrics.underruns);
+            }
+            this.playing = first;
+            this.paused = paused;
+
+            Thread output = new Thread(this::output, "headless-output");
+            output.setDaemon(true);
+            output.setPriority(Thread.MAX_PRIORITY);
+            if (!mapped) {
+                Thread decoder = new Thread(() -> decode(in), "headless-decode");
+                decoder.setDaemon(true);
+                decoder.start();
+            }
+            output.start();
+        }
+
+        // Mapped only. Flushing here unblocks a write held up by a paused line;
+        // the output thread does the rest before its next slice.
+        void seek(long frame) {
+            seekTo = frame;
+            line.flush();
+        }
+
+        double position() {
+            long to = seekTo; // not picked up yet
+            if (to >= 0) return to / format.getFrameRate();
+            long frames = playing.firstFrame() + line.getLongFramePosition() - segmentLineFrame;
+            return Math.max(0, frames) / format.getFrameRate();
+        }
+
+        // Whole frames of ms milliseconds
+        int bytes(int ms) {
+            return (int) (format.getFrameRate() * ms / 1000) * frameSize;
+        }
+
+        double total() {
+            long frames = playing.totalFrames();
+            return (frames > 0) ? frames / format.getFrameRate() : 0.0;
+        }
+
+        void publish() {
+            PositionListener l = positionListener;
+            if (l != null && !closed) l.moved(position(), total());
+        }
+
+        private void decode(AudioInputStream in) {
+            byte[] b = new byte[CHUNK / frameSize * frameSize];
+            try {
+                while (true) {
+                    while (!closed) {
+                        long t0 = System.nanoTime();
+                        int n = in.read(b);
+                        if (n <= 0) break;
+                        metrics.decoded(System.nanoTime() - t0);
+                        if (!ring.write(b, 0, n)) return;
+                    }
+                    in.close();
+                    in = null;
+                    if (closed) return;
+
+                    // Gapless: carry on into the next track if it decodes to the same format
+                    Supplier<Track> up = upcoming;
+                    Track next = (gapless && up != null) ? up.get() : null;
+                    if (next == null) return;
+                    try {
+                        in = open(next);
+                    } catch (UnsupportedAudioFileException | IOException e) {
+                        return; // onEnd gets to try it (and report the error)
+                    }
+                    if (!in.getFormat().matches(format)) return;
+                    pending.add(new Segment(next, ring.written(), 0, in.getFrameLength()));
+                }
+            } catch (IOException | RuntimeException e) { // a bad stream or a line that refuses a write
+                if (!closed) error(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                closeQuietly(in);
+                ring.finish();
+            }
+        }
+
+        private void output() {
+            byte[] b = new byte[CHUNK / frameSize * frameSize];
+            int sampleBytes = format.getSampleSizeInBits() / 8;
+            double applied = volume; // where the last slice's volume ended up
+            long consumed = 0;
+            long dropped = 0; // frames written but flushed away by seeks
+            int lineBytes = line.getBufferSize();
+            boolean fed = false; // the line has had something since it was (re)started
+            try {
+                if (!paused) line.start();
+                while (true) {
+                    long to = seekTo;
+                    if (to >= 0) {
+                        seekTo = -1;
+                        wav.seekFrame(to);
+                        line.flush();
+                        long heard = line.getLongFramePosition();
+                        dropped = consumed / frameSize - heard;
+                        segmentLineFrame = heard;
+                        fed = false; // empty now, and not for lack of feeding
+                        playing = new Segment(playing.track(), consumed, to, wav.frames());
+                        publish();
+                    }
+                    int want = b.length;
+                    Segment next = pending.peek();
+                    if (next != null) {
+                        if (next.startByte() <= consumed) { // the gapless track starts here
+                            pending.poll();
+                            segmentLineFrame = consumed / frameSize - dropped;
+                            playing = next;
+                            advanced(this, next.track());
+                            continue;
+                        }
+                        want = (int) Math.min(want, next.startByte() - consumed);
+                    }
+                    int n = mapped ? readMapped(b, want, consumed) : ring.read(b, 0, want);
+                    if (n < 0) break;
+                    double v = volume;
+                    applyVolume(b, n, applied, v, sampleBytes, frameSize);
+                    applied = v;
+                    // a running line with nothing left in it has been playing silence
+                    if (fed && !paused && lineBytes > 0 && line.available() >= lineBytes) metrics.lineUnderruns.increment();
+                    line.write(b, 0, n); // blocks while paused (the line is stopped)
+                    fed = n > 0;
+                    consumed += n;
+                    publish(); // once per chunk, ~23 ms at 44.1 kHz stereo
+                }
+                if (closed) return;
+                line.drain();
+                if (!closed) events.execute(() -> ended(this));
+            } catch (IOException | RuntimeException e) { // a bad stream or a line that refuses a write
+                if (!closed) error(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                if (wav != null) wav.close();
+            }
+        }
+
+        // The next slice straight from the mapping. At the end of the file it
+        // carries on into the next track if that's a WAV of the same format:
+        // returns 0 so the loop switches segments first.
+        private int readMapped(byte[] b, int len, long consumed) throws IOException {
+            int n = wav.read(b, 0, len);
+            if (n >= 0 || closed) return n;
+
+            Supplier<Track> up = upcoming;
+            Track next = (gapless && up != null) ? up.get() : null;
+            if (next == null || !isWav(next)) return -1; // onEnd plays it
+            WavFile w;
+            try {
+                w = WavFile.open(next.path());
+            } catch (IOException e) {
+                return -1; // onEnd gets to try it (and report the error)
+            }
+            if (w == null || !w.format.matches(format)) {
+                if (w != null) w.close();
+                return -1;
+            }
+            wav.close();
+            wav = w;
+            pending.add(new Segment(next, consumed, 0, w.frames()));
+            return 0;
+        }
+
+        void close() {
+            closed = true;
+            if (ring != null) ring.close();
+            line.stop();
+            line.flush();
+            line.close(); // unblocks the output thread's write
+        }
+    }
+
+    // Opens t at frame from and starts it (paused if asked); replaces any session
+    private void start(Track t, long from, boolean paused) {
+        closeSession();
+        if (t == null) return;
+        AudioInputStream in = null;
+        WavFile wav = null;
+        try {
+            wav = isWav(t) ? WavFile.open(t.path()) : null;
+            if (wav != null && !AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, wav.format))) {
+                wav.close(); // e.g. 24-bit on a 16-bit device: javax.sound converts it
+                wav = null;
+            }
+            AudioFormat f;
+            long total;
+            if (wav != null) {
+                f = wav.format;
+                total = wav.frames();
+                wav.seekFrame(from);
+            } else {
+                in = open(t);
+                f = in.getFormat();
+                total = in.getFrameLength();
+                for (long skip = from * f.getFrameSize(); skip > 0; ) {
+                    long n = in.skip(skip);
+                    if (n <= 0) break;
+                    skip -= n;
+                }
+            }
+            SourceDataLine line = AudioSystem.getSourceDataLine(f);
+            int lineBytes = (int) (f.getFrameRate() * LINE_MS / 1000) * f.getFrameSize();
+            line.open(f, lineBytes);
+            session = new Session(new Segment(t, 0, from, total), in, wav, line, paused);
+        } catch (UnsupportedAudioFileException e) {
+            closeQuietly(in);
+            System.out.println("Can't play " + t.displayName() + " headless: unsupported format (" + e.getMessage() + ")");
+        } catch (IOException | LineUnavailableException | IllegalArgumentException e) {
+            closeQuietly(in);
+            if (wav != null) wav.close();
+            error(e);
+        }
+    }
+
+    private void error(Exception e) {
+        metrics.errors.increment();
+        System.out.println("Playback error: " + e.getMessage());
+    }
+
+    @Override
+    public synchronized PlaybackStats stats() {
+        return (session != null) ? metrics.snapshot(session.ring, session.format) : metrics.snapshot(null, null);
+    }
+
+    static boolean isWav(Track t) {
+        return Playlist.ext(t.path()).equals("wav");
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+    }
+
+    // On the events thread, once the last track of s was heard to the end
+    private void ended(Session s) {
+        synchronized (this) {
+            if (s != session) return; // stopped or replaced meanwhile
+            closeSession();
+        }
+        Runnable r = onEnd;
+        if (r != null) r.run();
+    }
+
+    private void advanced(Session s, Track t) {
+        events.execute(() -> {
+            Consumer<Track> c = onAdvance;
+            if (!s.closed && c != null) c.accept(t);
+        });
+    }
+
+    // t as 16-bit signed little-endian PCM at its own rate and channel count
+    // (FeatureAnalyzer decodes through here too)
+    static AudioInputStream open(Track t) throws UnsupportedAudioFileException, IOException {
+        AudioInputStream src = AudioSystem.getAudioInputStream(t.path().toFile());
+        AudioFormat f = src.getFormat();
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, f.getSampleRate(), 16,
+                f.getChannels(), f.getChannels() * 2, f.getSampleRate(), false);
+        if (f.matches(pcm)) return src;
+        if (!AudioSystem.isConversionSupported(pcm, f)) {
+            src.close();
+            throw new UnsupportedAudioFileException(String.valueOf(f));
+        }
+        return AudioSystem.getAudioInputStream(pcm, src);
+    }
+
+    // Scales 16/24/32-bit LE samples in place, gliding frame by frame from one
+    // volume to the other so a change (or a fade stepped by PlayerEngine) doesn't
+    // click; full volume leaves them alone
+    private static void applyVolume(byte[] b, int n, double from, double to, int sampleBytes, int frameSize) {
+        if (from >= 1.0 && to >= 1.0) return;
+        int g0 = (int) Math.round(from * 65536);
+        int g1 = (int) Math.round(to * 65536);
+        if (g0 == g1) {
+            scale(b, 0, n, g0, sampleBytes);
+            return;
+        }
+        int frames = n / frameSize;
+        for (int f = 0; f < frames; f++) {
+            scale(b, f * frameSize, (f + 1) * frameSize, g0 + (int) ((long) (g1 - g0) * f / frames), sampleBytes);
+        }
+    }
+
+    private static void scale(byte[] b, int from, int to, int gain, int sampleBytes) {
+        switch (sampleBytes) {
+            case 2 -> {
+                for (int i = from; i + 1 < to; i += 2) {
+                    int s = (short) ((b[i] & 0xFF) | (b[i + 1] << 8));
+                    s = (s * gain) >> 16;
+                    b[i] = (byte) s;
+                    b[i + 1] = (byte) (s >> 8);
+                }
+            }
+            case 3 -> {
+                for (int i = from; i + 2 < to; i += 3) {
+                    int s = (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | (b[i + 2] << 16);
+                    s = (int) (((long) s * gain) >> 16);
+                    b[i] = (byte) s;
+                    b[i + 1] = (byte) (s >> 8);
+                    b[i + 2] = (byte) (s >> 16);
+                }
+            }
+            case 4 -> {
+                for (int i = from; i + 3 < to; i += 4) {
+                    int s = (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+                    s = (int) (((long) s * gain) >> 16);
+                    b[i] = (byte) s;
+                    b[i + 1] = (byte) (s >> 8);
+                    b[i + 2] = (byte) (s >> 16);
+                    b[i + 3] = (byte) (s >> 24);
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private static void closeQuietly(AudioInputStream in) {
+        if (in == null) return;
+        try { in.close(); } catch (IOException ignored) {}
+    }
+}
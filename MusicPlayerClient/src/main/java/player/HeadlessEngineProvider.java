@@ -0,0 +1,31 @@
+package player;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+
+// HeadlessEngine: javax.sound only, no toolkit. Available wherever there is
+// an output line for 16-bit PCM.
+public final class HeadlessEngineProvider implements AudioEngineProvider {
+    @Override
+    public String name() {
+        return "headless";
+    }
+
+    @Override
+    public int priority() {
+        return 10;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        AudioFormat cd = new AudioFormat(44100, 16, 2, true, false);
+        return AudioSystem.isLineSupported(new DataLine.Info(SourceDataLine.class, cd));
+    }
+
+    @Override
+    public AudioEngine create() {
+        return new HeadlessEngine();
+    }
+}
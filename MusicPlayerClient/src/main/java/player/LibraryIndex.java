@@ -0,0 +1,225 @@
+package player;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// On-disk snapshot of a scanned library, one record per directory. The
+// tracks themselves live in a TrackStore; a Dir only lists their ids.
+// On startup the scanner only stats each indexed directory: if its mtime is
+// unchanged the directory's tracks come straight from here, otherwise that one
+// directory is listed again. (A directory's mtime changes whenever an entry is
+// added, removed or renamed in it.)
+//
+// Name and folder sort keys are stored too, so a warm start doesn't run the
+// collator over the whole library again. They're only read back if they were
+// built with the same collation (SortKeys.collation); otherwise they're
+// skipped, built again as the sort needs them, and written on the next save.
+//
+// File layout (big-endian):
+//   int magic, int version, str root, str collation, int dirCount,
+//   dirCount x { str relDir, long mtime, key dirKey, int subdirCount, str[] subdirNames,
+//                int trackCount, trackCount x { str name, long size, long mtime, key nameKey, info } }
+//   info = byte 0 (not read yet) | byte 1, str? title, str? artist, str? album,
+//          int trackNo, long durationMs, long artOffset, int artLength
+//   str = unsigned short byte length + UTF-8 bytes; str? uses length 0xFFFF for null
+//   key = unsigned short length + bytes; 0xFFFF: not stored (too long)
+public class LibraryIndex {
+    private static final int MAGIC = 0x4D504958; // "MPIX"
+    private static final int VERSION = 4;
+
+    public record Dir(Path path, long modified, int[] tracks, List<Path> subdirs) {}
+
+    private final Path root;
+    private final TrackStore store;
+    private final Map<Path, Dir> dirs = new ConcurrentHashMap<>();
+    private boolean keysReused = false; // loaded, keys and all
+
+    LibraryIndex(Path root, TrackStore store) {
+        this.root = root.toAbsolutePath().normalize();
+        this.store = store;
+    }
+
+    public Dir dir(Path p) { return dirs.get(p); }
+    public void put(Dir d) { dirs.put(d.path(), d); }
+    public int dirCount() { return dirs.size(); }
+    public Collection<Path> dirPaths() { return dirs.keySet(); }
+    // False: the sort keys have to be built again, so the index is worth saving
+    public boolean keysReused() { return keysReused; }
+
+    // ~/.musicplayer/index-<hash>.bin (override the folder with -Dmusicplayer.cacheDir)
+    static Path fileFor(Path root) {
+        String abs = root.toAbsolutePath().normalize().toString();
+        return cacheDir().resolve("index-" + Integer.toHexString(abs.hashCode()) + ".bin");
+    }
+
+    static Path cacheDir() {
+        String dir = System.getProperty("musicplayer.cacheDir");
+        return (dir != null) ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".musicplayer");
+    }
+
+    // Never throws: a missing, stale or corrupt index just means a full scan.
+    // Tracks are added to store; names are copied into it straight from the
+    // mapped file, without a String or Path per track.
+    static LibraryIndex load(Path root, TrackStore store) {
+        LibraryIndex index = new LibraryIndex(root, store);
+        Path file = fileFor(root);
+        if (!Files.isRegularFile(file)) return index;
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) return index;
+            if (!index.root.toString().equals(readStr(buf))) return index; // hash collision
+            boolean keys = SortKeys.collation().equals(readStr(buf));
+
+            byte[] name = new byte[0xFFFF];
+            int dirCount = buf.getInt();
+            for (int i = 0; i < dirCount; i++) {
+                Path dir = index.root.resolve(readStr(buf));
+                int dirId = store.dirId(dir);
+                long modified = buf.getLong();
+                byte[] dirKey = readKey(buf, keys);
+                if (dirKey != null) store.setFolderKey(dirId, dirKey);
+
+                int subCount = buf.getInt();
+                List<Path> subdirs = new ArrayList<>(subCount);
+                for (int j = 0; j < subCount; j++) subdirs.add(dir.resolve(readStr(buf)));
+
+                int trackCount = buf.getInt();
+                int[] tracks = new int[trackCount];
+                for (int j = 0; j < trackCount; j++) {
+                    int len = Short.toUnsignedInt(buf.getShort());
+                    buf.get(name, 0, len);
+                    int id = store.add(dirId, name, 0, len, buf.getLong(), buf.getLong());
+                    byte[] key = readKey(buf, keys);
+                    if (key != null) store.setNameKey(id, key);
+                    if (buf.get() == 1) {
+                        store.setInfo(id, new TrackInfo(readOptStr(buf), readOptStr(buf), readOptStr(buf),
+                                buf.getInt(), buf.getLong(), buf.getLong(), buf.getInt()));
+                    }
+                    tracks[j] = id;
+                }
+                index.put(new Dir(dir, modified, tracks, subdirs));
+            }
+            index.keysReused = keys;
+        } catch (IOException | RuntimeException e) {
+            return new LibraryIndex(root, store); // tracks read so far stay unused in store
+        }
+        return index;
+    }
+
+    // Written to a temp file first so a crash never leaves a half-written index.
+    // Synchronized: the scan and the metadata loader may both ask for a save.
+    public synchronized void save() throws IOException {
+        Path file = fileFor(root);
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeStr(out, root.toString());
+            writeStr(out, SortKeys.collation());
+            byte[] name = new byte[0xFFFF];
+            out.writeInt(dirs.size());
+            for (Dir d : dirs.values()) {
+                writeStr(out, root.relativize(d.path()).toString());
+                out.writeLong(d.modified());
+                writeKey(out, store.folderKey(store.dirId(d.path())));
+
+                out.writeInt(d.subdirs().size());
+                for (Path s : d.subdirs()) writeStr(out, s.getFileName().toString());
+
+                out.writeInt(d.tracks().length);
+                for (int id : d.tracks()) {
+                    int len = store.nameLength(id);
+                    store.copyName(id, name, 0);
+                    out.writeShort(len);
+                    out.write(name, 0, len);
+                    out.writeLong(store.size(id));
+                    out.writeLong(store.modified(id));
+                    writeKey(out, store.nameKey(id)); // built now if the sort didn't need it
+
+                    TrackInfo info = store.info(id);
+                    out.writeByte(info != null ? 1 : 0);
+                    if (info != null) {
+                        writeOptStr(out, info.title());
+                        writeOptStr(out, info.artist());
+                        writeOptStr(out, info.album());
+                        out.writeInt(info.trackNo());
+                        out.writeLong(info.durationMs());
+                        out.writeLong(info.artOffset());
+                        out.writeInt(info.artLength());
+                    }
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String readStr(ByteBuffer buf) {
+        byte[] b = new byte[Short.toUnsignedInt(buf.getShort())];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static String readOptStr(ByteBuffer buf) {
+        int len = Short.toUnsignedInt(buf.getShort(buf.position()));
+        if (len == 0xFFFF) {
+            buf.getShort();
+            return null;
+        }
+        return readStr(buf);
+    }
+
+    // Tags, unlike paths, are cut to fit rather than failing the whole save
+    private static void writeOptStr(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(0xFFFF);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        int n = b.length;
+        if (n >= 0xFFFF) {
+            n = 0xFFFE;
+            while ((b[n] & 0xC0) == 0x80) n--; // not in the middle of a character
+        }
+        out.writeShort(n);
+        out.write(b, 0, n);
+    }
+
+    // null if not stored, or if use is false (the bytes are skipped)
+    private static byte[] readKey(ByteBuffer buf, boolean use) {
+        int len = Short.toUnsignedInt(buf.getShort());
+        if (len == 0xFFFF) return null;
+        if (!use) {
+            buf.position(buf.position() + len);
+            return null;
+        }
+        byte[] k = new byte[len];
+        buf.get(k);
+        return k;
+    }
+
+    private static void writeKey(DataOutputStream out, byte[] k) throws IOException {
+        if (k.length >= 0xFFFF) {
+            out.writeShort(0xFFFF);
+            return;
+        }
+        out.writeShort(k.length);
+        out.write(k);
+    }
+
+    private static void writeStr(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (b.length >= 0xFFFF) throw new IOException("Path too long for index: " + s);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+}
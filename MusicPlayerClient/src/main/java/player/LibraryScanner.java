@@ -0,0 +1,186 @@
+package player;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Walks a music folder in parallel: every directory is its own fork-join task,
+// so big subtrees (e.g. one folder per artist on a NAS) are listed concurrently.
+// Tracks are handed to the listener one directory at a time as soon as that
+// directory has been read, instead of after the whole tree is done.
+//
+// Given a LibraryIndex from a previous run, directories whose mtime did not
+// change are taken from the index instead of being listed again. In one that
+// did, files whose size and mtime are unchanged keep their indexed id, and with
+// it their tags and sort key; only new or changed files are added to the store.
+//
+// Tracks go straight into a TrackStore; listeners get their ids.
+public class LibraryScanner {
+
+    public interface Listener {
+        // Ids in the scanner's store. Called from scanner threads, possibly concurrently.
+        void onTracks(int[] batch);
+
+        // Every directory visited, whether it was listed or reused from the index.
+        default void onDirectory(LibraryIndex.Dir dir, boolean fromIndex) {}
+    }
+
+    // Listing a directory is mostly waiting on the disk / network, so use more
+    // threads than cores.
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final Set<String> extensions;
+    private final TrackStore store;
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+    LibraryScanner(Set<String> extensions, TrackStore store) {
+        this.extensions = extensions;
+        this.store = store;
+    }
+
+    public CompletableFuture<Integer> scan(Path root, Listener listener) {
+        return scan(root, listener, null);
+    }
+
+    // Starts scanning in the background. The future completes with the number
+    // of tracks found once every directory has been listed. known may be null.
+    public CompletableFuture<Integer> scan(Path root, Listener listener, LibraryIndex known) {
+        if (!Files.isDirectory(root)) throw new IllegalArgumentException("Not a folder: " + root);
+
+        cancelled.set(false);
+        ForkJoinPool pool = new ForkJoinPool(THREADS);
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+        Path start = root.toAbsolutePath().normalize();
+
+        pool.execute(() -> {
+            try {
+                done.complete(new DirTask(start, -1, listener, known).invoke());
+            } catch (Throwable t) {
+                done.completeExceptionally(t);
+            } finally {
+                pool.shutdown();
+            }
+        });
+        return done;
+    }
+
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    @SuppressWarnings("serial") // never serialized
+    private final class DirTask extends RecursiveTask<Integer> {
+        private final Path dir;
+        private final long modified; // from the parent's walk, -1 if not known yet
+        private final Listener listener;
+        private final LibraryIndex known;
+        private final Map<Path, Long> childModified = new HashMap<>();
+
+        DirTask(Path dir, long modified, Listener listener, LibraryIndex known) {
+            this.dir = dir;
+            this.modified = modified;
+            this.listener = listener;
+            this.known = known;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (cancelled.get()) return 0;
+
+            long mtime = modified;
+            if (mtime < 0) {
+                try {
+                    mtime = Files.getLastModifiedTime(dir).toMillis();
+                } catch (IOException e) {
+                    return 0; // directory vanished or unreadable
+                }
+            }
+
+            LibraryIndex.Dir cached = (known != null) ? known.dir(dir) : null;
+            boolean fromIndex = cached != null && cached.modified() == mtime;
+            LibraryIndex.Dir result = fromIndex ? cached : list(mtime, cached);
+            if (result == null) return 0;
+
+            listener.onDirectory(result, fromIndex);
+            // Publish before waiting on children so the first results show up right away
+            if (result.tracks().length > 0) listener.onTracks(result.tracks());
+
+            List<DirTask> subdirs = new ArrayList<>(result.subdirs().size());
+            for (Path sub : result.subdirs()) {
+                // Freshly listed subdirectories get their mtime from the walk; cached
+                // ones have to be stat'ed to find out whether they changed.
+                long subModified = fromIndex ? -1 : childModified.getOrDefault(sub, -1L);
+                subdirs.add(new DirTask(sub, subModified, listener, known));
+            }
+            invokeAll(subdirs);
+
+            int total = result.tracks().length;
+            for (DirTask t : subdirs) total += t.join();
+            return total;
+        }
+
+        // cached: this directory's previous listing, or null
+        private LibraryIndex.Dir list(long mtime, LibraryIndex.Dir cached) {
+            int dirId = store.dirId(dir);
+            Map<String, Integer> before = new HashMap<>();
+            if (cached != null) for (int id : cached.tracks()) before.put(store.name(id), id);
+            List<Path> subdirs = new ArrayList<>();
+
+            // maxDepth 1: we get every entry of this directory together with the
+            // attributes the walk already read, so no extra stat per file.
+            var lister = new SimpleFileVisitor<Path>() {
+                int[] found = new int[16]; // track ids
+                int count = 0;
+
+                @Override
+                public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+                    if (attrs.isDirectory()) {
+                        subdirs.add(p);
+                        childModified.put(p, attrs.lastModifiedTime().toMillis());
+                    } else if (extensions.contains(Playlist.ext(p))) {
+                        BasicFileAttributes a = attrs;
+                        // Symlinked files still count, like Files::isRegularFile did.
+                        // Linked directories are not followed (neither did Files.walk).
+                        if (a.isSymbolicLink()) {
+                            try { a = Files.readAttributes(p, BasicFileAttributes.class); }
+                            catch (IOException e) { return FileVisitResult.CONTINUE; }
+                        }
+                        if (a.isRegularFile()) {
+                            String fileName = p.getFileName().toString();
+                            byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+                            if (name.length > 0xFFFF) return FileVisitResult.CONTINUE;
+                            long size = a.size(), modified = a.lastModifiedTime().toMillis();
+                            Integer old = before.get(fileName);
+                            int id = (old != null && store.size(old) == size && store.modified(old) == modified)
+                                    ? old : store.add(dirId, name, 0, name.length, size, modified);
+                            if (count == found.length) found = Arrays.copyOf(found, count * 2);
+                            found[count++] = id;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path p, IOException e) {
+                    return FileVisitResult.CONTINUE; // unreadable entry, skip it
+                }
+            };
+            try {
+                Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), 1, lister);
+            } catch (IOException e) {
+                return null; // unreadable directory, skip it
+            }
+            return new LibraryIndex.Dir(dir, mtime, Arrays.copyOf(lister.found, lister.count), subdirs);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package player;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Keeps a Playlist in sync with the music folder while the app runs.
+// Every scanned directory is registered with a WatchService; file events are
+// turned into single-track inserts / removals / updates on the playlist.
+// A rename arrives as DELETE(old) + CREATE(new), so it needs no special case.
+//
+// Changes are applied through applyOn, so the GUI can have them run on the
+// FX thread (Platform::runLater) and the CLI directly on the watcher thread.
+public class LibraryWatcher implements AutoCloseable {
+    private final Playlist playlist;
+    private final Set<String> extensions;
+    private final Executor applyOn;
+    private final WatchService ws;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public LibraryWatcher(Playlist playlist, Set<String> extensions, Executor applyOn) throws IOException {
+        this.playlist = playlist;
+        this.extensions = extensions;
+        this.applyOn = applyOn;
+        this.ws = FileSystems.getDefault().newWatchService();
+
+        thread = new Thread(this::loop, "library-watcher");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    public void register(Path dir) {
+        try {
+            keys.put(dir.register(ws, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+        } catch (IOException e) {
+            // directory went away or is not watchable (some network mounts); just skip it
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try { ws.close(); } catch (IOException ignored) {}
+    }
+
+    private void loop() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Path dir = keys.get(key);
+            if (dir != null) {
+                for (WatchEvent<?> ev : key.pollEvents()) {
+                    if (ev.kind() == OVERFLOW) {
+                        resync(dir);
+                        continue;
+                    }
+                    handle(ev.kind(), dir.resolve((Path) ev.context()));
+                }
+            }
+            if (!key.reset()) keys.remove(key); // directory deleted
+        }
+    }
+
+    private void handle(WatchEvent.Kind<?> kind, Path p) {
+        if (kind == ENTRY_DELETE) {
+            // We can't stat a deleted path; removeUnder covers both a file and a whole folder
+            applyOn.execute(() -> playlist.removeUnder(p));
+            return;
+        }
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return; // already gone again
+        }
+
+        if (attrs.isDirectory()) {
+            // New (or renamed) folder: register it and everything below it
+            if (kind == ENTRY_CREATE) scanNewFolder(p);
+            return;
+        }
+        if (!attrs.isRegularFile() || !extensions.contains(Playlist.ext(p))) return;
+
+        Track t = new Track(p, attrs.size(), attrs.lastModifiedTime().toMillis());
+        // MODIFY is also how a file that is still being copied in keeps growing
+        applyOn.execute(() -> playlist.addOrUpdate(t));
+    }
+
+    private void scanNewFolder(Path folder) {
+        TrackStore found = new TrackStore(); // addOrUpdate copies them into the playlist's
+        new LibraryScanner(extensions, found).scan(folder, new LibraryScanner.Listener() {
+            @Override
+            public void onTracks(int[] batch) {
+                applyOn.execute(() -> { for (int id : batch) playlist.addOrUpdate(found.track(id)); });
+            }
+
+            @Override
+            public void onDirectory(LibraryIndex.Dir d, boolean fromIndex) {
+                register(d.path());
+            }
+        });
+    }
+
+    // Events were dropped: compare the directory listing with the playlist
+    private void resync(Path dir) {
+        List<Track> onDisk = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path p : ds) {
+                if (!extensions.contains(Playlist.ext(p))) continue;
+                BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class);
+                if (a.isRegularFile()) onDisk.add(new Track(p, a.size(), a.lastModifiedTime().toMillis()));
+            }
+        } catch (IOException e) {
+            return;
+        }
+        applyOn.execute(() -> playlist.syncFolder(dir, onDisk));
+    }
+}
@@ -0,0 +1,72 @@
+package player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Arguments of "list" (CLI and control server), see Playlist.list:
+//   list [n]                     first n tracks (default 30), as it always was
+//   list --from <i> --count <n>  a page; the output ends with where the next one starts
+//   --dir <folder>               only tracks in that folder or below (relative to the library)
+//   --ext <ext>                  only files with that extension
+//   --json                       one JSON object per line (NDJSON)
+// Values with spaces go in double quotes: --dir "Pink Floyd".
+record ListQuery(int from, int count, String dir, String ext, boolean json) {
+    static final int DEFAULT_COUNT = 30;
+
+    static ListQuery parse(String args) {
+        int from = 0, count = DEFAULT_COUNT;
+        String dir = null, ext = null;
+        boolean json = false;
+        List<String> a = tokens(args);
+        for (int i = 0; i < a.size(); i++) {
+            switch (a.get(i)) {
+                case "--from" -> from = Integer.parseInt(value(a, ++i));
+                case "--count" -> count = Integer.parseInt(value(a, ++i));
+                case "--dir" -> dir = value(a, ++i);
+                case "--ext" -> ext = value(a, ++i).replaceFirst("^\\.", "").toLowerCase(Locale.ROOT);
+                case "--json" -> json = true;
+                default -> count = Integer.parseInt(a.get(i));
+            }
+        }
+        if (from < 0 || count < 0) throw new IllegalArgumentException("Index out of range.");
+        return new ListQuery(from, count, dir, ext, json);
+    }
+
+    // The command that lists the page after this one, starting at from
+    String more(int from) {
+        StringBuilder sb = new StringBuilder("list --from ").append(from).append(" --count ").append(count);
+        if (dir != null) sb.append(" --dir ").append(dir.chars().anyMatch(Character::isWhitespace) ? '"' + dir + '"' : dir);
+        if (ext != null) sb.append(" --ext ").append(ext);
+        if (json) sb.append(" --json");
+        return sb.toString();
+    }
+
+    private static String value(List<String> a, int i) {
+        if (i >= a.size()) throw new IllegalArgumentException("Missing value for " + a.get(i - 1));
+        return a.get(i);
+    }
+
+    // Splits on whitespace, keeping "double quoted" runs together
+    private static List<String> tokens(String s) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false, any = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                any = true;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (any) out.add(cur.toString());
+                cur.setLength(0);
+                any = false;
+            } else {
+                cur.append(c);
+                any = true;
+            }
+        }
+        if (any) out.add(cur.toString());
+        return out;
+    }
+}
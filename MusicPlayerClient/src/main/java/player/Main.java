@@ -1,32 +1,90 @@
 package player;
 
-import javafx.application.Platform;
-
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Main {
     private static final Set<String> EXT = Set.of("mp3", "m4a", "aac", "wav");
     private static final Scanner IN = new Scanner(System.in);
+    private static final int FIND_LIMIT = 20;
 
     private static final Playlist playlist = new Playlist(EXT);
-    private static final PlayerEngine engine = new PlayerEngine();
+    private static AudioEngine engine;
+    private static Path library;
+    private static FeatureAnalyzer analyzer;           // created by the first analyze
+    private static CompletableFuture<FeatureAnalyzer.Report> analysis;
+    private static ControlServer control;               // --control=<port|unix:path>
+    // Control server commands run here, one at a time, so its selector never waits on the engine
+    private static final ExecutorService CONTROL = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "control-commands");
+        t.setDaemon(true);
+        return t;
+    });
 
     public static void main(String[] args) throws Exception {
-        // Start JavaFX runtime (no window needed)
-        CountDownLatch fx = new CountDownLatch(1);
-        Platform.startup(fx::countDown);
-        fx.await();
+        // --engine=<name> picks a backend (see AudioEngineProvider), --headless is
+        // short for --engine=headless; otherwise the best one that runs here.
+        // --control=<port|unix:path> lets scripts drive the player (see ControlServer).
+        List<String> rest = new ArrayList<>(List.of(args));
+        String engineName = rest.remove("--headless") ? "headless" : System.getProperty("player.engine");
+        String controlSpec = System.getProperty("player.control");
+        for (Iterator<String> it = rest.iterator(); it.hasNext(); ) {
+            String a = it.next();
+            if (a.startsWith("--engine=")) {
+                engineName = a.substring("--engine=".length());
+                it.remove();
+            } else if (a.startsWith("--control=")) {
+                controlSpec = a.substring("--control=".length());
+                it.remove();
+            }
+        }
+        try {
+            engine = AudioEngineProvider.create(engineName);
+            if (engineName == null && engine instanceof HeadlessEngine)
+                System.out.println("JavaFX unavailable, playing headless (WAV/AIFF/AU only).");
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + "; falling back to headless playback.");
+            engine = new HeadlessEngine();
+        }
 
-        Path folder = (args.length > 0) ? Paths.get(args[0]) : null;
+        Path folder = !rest.isEmpty() ? Paths.get(rest.get(0)) : null;
         if (folder == null) {
             System.out.print("Music folder path: ");
             folder = Paths.get(IN.nextLine().trim());
         }
+        library = folder;
 
-        playlist.loadFromFolder(folder);
-        System.out.println("Loaded " + playlist.size() + " tracks.");
+        if (controlSpec != null) {
+            try {
+                control = ControlServer.open(controlSpec, Main::remote);
+                engine = new PublishingEngine(engine, control::publish);
+                System.out.println("Control server on " + control.address());
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Control server unavailable: " + e.getMessage());
+            }
+        }
+
+        // Scan in the background; commands already work on whatever has been found so far
+        playlist.loadFromFolderAsync(folder, null).whenComplete((n, err) -> {
+            if (err != null) {
+                System.out.println("Scan failed: " + err.getMessage());
+                return;
+            }
+            System.out.println("Loaded " + n + " tracks.");
+            // pick up files added/removed while we run (applied on the watcher thread)
+            try { playlist.startWatching(Runnable::run); }
+            catch (IOException e) { System.out.println("Folder watching unavailable: " + e.getMessage()); }
+        });
+        System.out.println("Scanning " + folder + " ...");
         help();
 
         // auto-advance when song ends
@@ -35,9 +93,16 @@ public class Main {
             engine.play(t);
             if (t != null) System.out.println("Playing: [" + playlist.index() + "] " + t.displayName());
         });
+        // gapless: the next track is pre-rolled before this one ends (onEnd is the fallback)
+        engine.setGapless(true, playlist::peekNext, t -> {
+            playlist.advanceTo(t);
+            System.out.println("Playing: [" + playlist.index() + "] " + t.displayName());
+        });
 
         commandLoop();
 
+        if (control != null) control.close();
+        if (analyzer != null) analyzer.close();
         engine.shutdown();
     }
 
@@ -54,16 +119,29 @@ public class Main {
             try {
                 switch (cmd) {
                     case "help" -> help();
-                    case "list" -> playlist.list(parts.length > 1 ? Integer.parseInt(parts[1]) : 30);
-                    case "play" -> playIndex(Integer.parseInt(parts[1]));
+                    case "list" -> list(line.substring(parts[0].length()));
+                    case "play" -> say(playIndex(Integer.parseInt(parts[1])));
+                    case "find" -> find(line.substring(parts[0].length()).trim());
+                    case "sort" -> sort(parts.length > 1 ? parts[1] : "");
+                    case "shuffle" -> shuffle(parts.length > 1 ? parts[1] : "");
+                    case "queue" -> showQueue(parts.length > 1 ? Integer.parseInt(parts[1]) : 20);
+                    case "enqueue" -> enqueue(Integer.parseInt(parts[1]), false);
+                    case "playnext" -> enqueue(Integer.parseInt(parts[1]), true);
+                    case "unqueue" -> { System.out.println("Removed: " + playlist.queue().remove(Integer.parseInt(parts[1])).displayName()); engine.invalidateUpcoming(); }
+                    case "qmove" -> { playlist.queue().move(Integer.parseInt(parts[1]), Integer.parseInt(parts[2])); engine.invalidateUpcoming(); showQueue(20); }
+                    case "qclear" -> { playlist.queue().clear(); engine.invalidateUpcoming(); System.out.println("Queue cleared."); }
                     case "pause" -> { engine.pause(); System.out.println("Paused."); }
                     case "resume" -> { engine.resume(); System.out.println("Resumed."); }
                     case "stop" -> { engine.stop(); System.out.println("Stopped."); }
-                    case "next" -> next();
-                    case "prev" -> prev();
+                    case "next" -> say(next());
+                    case "prev" -> say(prev());
                     case "seek" -> { engine.seekSeconds(Integer.parseInt(parts[1])); System.out.println("Seek -> " + parts[1] + "s"); }
                     case "vol" -> { engine.setVolume(Double.parseDouble(parts[1])); System.out.println("Volume set."); }
+                    case "analyze" -> analyze();
+                    case "features" -> features(Integer.parseInt(parts[1]));
                     case "now" -> engine.printNowPlaying("Now: [" + playlist.index() + "] ", playlist.current());
+                    case "stats" -> System.out.println(engine.stats().describe());
+                    case "crossfade" -> System.out.println(crossfade(engine, parts[1]));
                     case "quit", "exit" -> { return; }
                     default -> System.out.println("Unknown command. Type: help");
                 }
@@ -73,25 +151,150 @@ public class Main {
         }
     }
 
-    private static void playIndex(int i) {
-        if (playlist.isEmpty()) { System.out.println("No tracks loaded."); return; }
+    // Through one 64 KB buffered writer rather than a printf per line; JSON is
+    // always UTF-8, text in the console's encoding
+    private static void list(String args) throws IOException {
+        ListQuery q = ListQuery.parse(args);
+        String enc = System.getProperty("sun.stdout.encoding");
+        Charset cs = q.json() ? StandardCharsets.UTF_8 : (enc != null) ? Charset.forName(enc) : Charset.defaultCharset();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, cs), 1 << 16);
+        playlist.list(out, q);
+        out.flush(); // not close(): that would close System.out
+    }
+
+    private static void say(String s) {
+        if (s != null) System.out.println(s);
+    }
+
+    private static String playIndex(int i) {
+        if (playlist.isEmpty()) return "No tracks loaded.";
         Track t = playlist.setIndex(i);
         engine.play(t);
-        System.out.println("Playing: [" + playlist.index() + "] " + t.displayName());
+        return "Playing: [" + playlist.index() + "] " + t.displayName();
+    }
+
+    private static void find(String query) {
+        if (query.isEmpty()) { System.out.println("Usage: find <query>"); return; }
+        long t0 = System.nanoTime();
+        List<Track> hits = playlist.search(query, FIND_LIMIT);
+        long us = (System.nanoTime() - t0) / 1000;
+
+        for (Track t : hits) {
+            String artist = t.artist();
+            System.out.printf("%4d  %s%s%n", playlist.indexOf(t), t.displayName(), artist != null ? "  (" + artist + ")" : "");
+        }
+        System.out.println(hits.isEmpty() ? "No matches." : hits.size() + (hits.size() == FIND_LIMIT ? "+" : "") + " match(es), " + us + " us. Use: play <i>");
     }
 
-    private static void next() {
-        if (playlist.isEmpty()) return;
+    private static void sort(String name) {
+        SortOrder o = SortOrder.parse(name);
+        if (o == null) {
+            System.out.println("Usage: sort name|path|title|artist|modified (now: " + playlist.sortOrder().name().toLowerCase(Locale.ROOT) + ")");
+            return;
+        }
+        long t0 = System.nanoTime();
+        playlist.sort(o);
+        System.out.printf("Sorted %d tracks by %s in %d ms.%n", playlist.size(), name.toLowerCase(Locale.ROOT), (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    private static void shuffle(String arg) {
+        switch (arg) {
+            case "on" -> playlist.setShuffle(true);
+            case "off" -> playlist.setShuffle(false);
+            case "" -> playlist.setShuffle(!playlist.isShuffle());
+            default -> { System.out.println("Usage: shuffle [on|off]"); return; }
+        }
+        System.out.println("Shuffle " + (playlist.isShuffle() ? "on." : "off."));
+    }
+
+    private static void showQueue(int n) {
+        PlayQueue q = playlist.queue();
+        List<Track> up = q.list(0, n);
+        for (int i = 0; i < up.size(); i++) System.out.printf("%4d  %s%n", i, up.get(i).displayName());
+        if (q.size() > up.size()) System.out.println("... (" + (q.size() - up.size()) + " more)");
+        if (up.isEmpty()) System.out.println("Queue is empty.");
+    }
+
+    private static void enqueue(int i, boolean first) {
+        Track t = playlist.get(i);
+        PlayQueue q = playlist.queue();
+        if (first) q.addFirst(t);
+        else q.addLast(t);
+        engine.invalidateUpcoming();
+        System.out.println((first ? "Playing next: " : "Queued: ") + t.displayName() + " (" + q.size() + " in queue)");
+    }
+
+    private static String next() {
+        if (playlist.isEmpty()) return null;
         Track t = playlist.next();
         engine.play(t);
-        if (t != null) System.out.println("Playing: [" + playlist.index() + "] " + t.displayName());
+        return (t != null) ? "Playing: [" + playlist.index() + "] " + t.displayName() : null;
     }
 
-    private static void prev() {
-        if (playlist.isEmpty()) return;
+    private static String prev() {
+        if (playlist.isEmpty()) return null;
         Track t = playlist.prev();
         engine.play(t);
-        if (t != null) System.out.println("Playing: [" + playlist.index() + "] " + t.displayName());
+        return (t != null) ? "Playing: [" + playlist.index() + "] " + t.displayName() : null;
+    }
+
+    // CLI and GUI alike
+    static String crossfade(AudioEngine engine, String seconds) {
+        double s = Double.parseDouble(seconds);
+        if (!(s >= 0 && s <= AudioEngine.MAX_CROSSFADE)) // NaN fails both
+            throw new IllegalArgumentException("Crossfade is 0.." + (int) AudioEngine.MAX_CROSSFADE + " s.");
+        engine.setCrossfade(s);
+        return (s > 0) ? "Crossfade " + s + " s." : "Crossfade off.";
+    }
+
+    // A command from the control server; the reply is what the console would print
+    private static CompletableFuture<String> remote(String cmd, String args) {
+        return CompletableFuture.supplyAsync(() -> switch (cmd) {
+            case "play" -> playIndex(Integer.parseInt(args));
+            case "pause" -> { engine.pause(); yield "Paused."; }
+            case "resume" -> { engine.resume(); yield "Resumed."; }
+            case "stop" -> { engine.stop(); yield "Stopped."; }
+            case "next" -> next();
+            case "prev" -> prev();
+            case "seek" -> { engine.seekSeconds(Double.parseDouble(args)); yield "Seek -> " + args + "s"; }
+            case "vol" -> { engine.setVolume(Double.parseDouble(args)); yield "Volume set."; }
+            case "now" -> engine.nowPlaying("Now: [" + playlist.index() + "] ", playlist.current());
+            case "list" -> playlist.list(ListQuery.parse(args));
+            case "stats" -> engine.stats().describe();
+            case "crossfade" -> crossfade(engine, args);
+            default -> throw new IllegalArgumentException("unknown command: " + cmd);
+        }, CONTROL);
+    }
+
+    // Runs in the background; the report is printed when it's done
+    private static void analyze() {
+        if (analysis != null && !analysis.isDone()) {
+            System.out.println("Analysis already running.");
+            return;
+        }
+        if (analyzer == null) analyzer = new FeatureAnalyzer(FeatureStore.load(library));
+        List<Track> tracks = playlist.all();
+        System.out.println("Analyzing " + tracks.size() + " tracks in the background ...");
+        analysis = analyzer.analyze(tracks).whenComplete((r, err) -> {
+            if (err != null) {
+                System.out.println("Analysis failed: " + err.getMessage());
+                return;
+            }
+            System.out.printf("Analyzed %d tracks in %.1f s (%.1f tracks/s, %.0fx real time); %d up to date, %d unsupported, %d failed.%n",
+                    r.analyzed(), r.nanos() / 1e9, r.tracksPerSecond(), r.speed(), r.upToDate(), r.unsupported(), r.failed());
+        });
+    }
+
+    private static void features(int i) {
+        Track t = playlist.get(i);
+        FeatureStore store = (analyzer != null) ? analyzer.store() : FeatureStore.load(library);
+        TrackFeatures f = store.get(t);
+        if (f == null) {
+            System.out.println(t.displayName() + ": not analyzed yet (run analyze).");
+            return;
+        }
+        System.out.printf("%s%n  tempo %s  loudness %.1f dBFS  gain %+.1f dB%n  energy |%s|%n", t.displayName(),
+                f.bpm() > 0 ? String.format("%.1f BPM", f.bpm()) : "--", f.loudnessDb(), f.gainDb(), f.energyBar());
     }
 
     private static void help() {
@@ -99,12 +302,27 @@ public class Main {
 Commands:
   help
   list [n]         - show first n tracks (default 30)
+  list --from <i> --count <n> [--dir <folder>] [--ext <ext>] [--json]
+                   - a page of tracks, optionally filtered, optionally as NDJSON
   play <i>         - play track index i
+  find <query>     - search names and tags (shows indexes for play)
+  sort <order>     - name | path | title | artist | modified
+  shuffle [on|off] - next/prev in shuffled order (no arg: toggle)
+  queue [n]        - show the next n queued tracks (default 20)
+  enqueue <i>      - add track i to the end of the queue
+  playnext <i>     - queue track i to play next
+  unqueue <pos>    - remove queue entry pos
+  qmove <from> <to> - reorder the queue
+  qclear           - empty the queue
   pause | resume | stop
-  next | prev
+  next | prev      - queued tracks come before the playlist
   seek <seconds>   - jump to time
   vol <0..1>       - set volume
+  crossfade <s>    - overlap track changes by s seconds, 0..12 (0: off; JavaFX player only)
   now              - show current track/time
+  stats            - underruns, buffer fill and decode time (tune with -Dplayer.bufferMs etc.)
+  analyze          - measure tempo / loudness / energy of new or changed tracks
+  features <i>     - show what analyze found for track i
   quit
 """);
     }
@@ -1,6 +1,5 @@
 package player;
 
-import javafx.animation.Timeline;
 import javafx.animation.TranslateTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -20,13 +19,17 @@ import javafx.util.Duration;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
-import java.util.Random;
 import java.util.Set;
-import javafx.animation.KeyFrame;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.input.ScrollEvent;
 
@@ -56,7 +59,8 @@ public class MainApp extends Application {
 
     // UI elements inside phone
     private final ListView<String> appList = new ListView<>();
-    private final ListView<Track> musicList = new ListView<>();
+    private final TrackItems musicItems = new TrackItems();
+    private final ListView<Track> musicList = new ListView<>(musicItems);
 
     // Launcher Aoo grid
     private final String[] apps = { "Music", "Messages", "Settings", "Notes", "Map", "Camera", "Clock" };
@@ -68,47 +72,76 @@ public class MainApp extends Application {
     // data selection
     private final Playlist playlist = new Playlist(EXT);
 
-    // playback and audio
-    private final PlayerEngine engine = new PlayerEngine();
+    // playback and audio: JavaFX unless --engine=<name> picks another backend
+    private AudioEngine engine;
 
     // Phone screens
     private VBox launcherScreen;
     private VBox musicListScreen;
-    private VBox musicPlayerScreen;
+    private Label listHeader;
+    private String listTitle = "Music";
 
-    private TranslateTransition marquee;
+    // Type-to-filter on the music list; empty = whole library
+    private static final int FILTER_LIMIT = 500;
+    private final StringBuilder filter = new StringBuilder();
+    private VBox musicPlayerScreen;
 
     // Loop, Mix, Random
     private enum LoopMode {
         OFF, ONCE, REPEAT
     }
 
-    private LoopMode loopMode = LoopMode.OFF;
+    private volatile LoopMode loopMode = LoopMode.OFF; // also read by the engine's upcoming callback
     // Asked for loop once but hasn't happened yet
     private boolean loopOnceArmed = false;
-    private boolean mix = false;
-    private final Random rng = new Random();
+    private boolean mix = false; // Mix = the playlist's shuffle mode
 
     // Music Playing Screen
     private ImageView albumArt;
+    private Image defaultArt;
+    private final AlbumArtCache art = new AlbumArtCache();
+    private Track artFor; // track whose art albumArt should show
     private final Label nowTrack = new Label("");
     private final Label statusBar = new Label("Stopped");
     private ToggleButton playPauseBtn;
     private boolean isPaused = false;
     private final java.util.List<ButtonBase> playerBtns = new java.util.ArrayList<>();
     private int playerFocus = 0;
-    private boolean isPlaying = false;
+    private volatile boolean isPlaying = false; // also read by remote queries
     private Button loopBtn; // field
+    private Button prevBtn, stopBtn, nextBtn;
     private Slider progress;
     private final Label timeLabel = new Label("0:00 / 0:00");
-    private Timeline progressTimer;
     private boolean userScrubbing = false;
+    // Position display: the engine pushes positions while the player screen is
+    // on show (see updatePositionListener). The slider follows every one; the
+    // label only changes when the shown second does. shownPosition is
+    // (second << 32 | total second), -1 = redraw. pendingPosition is the latest
+    // event not yet drawn: at most one hand-over to the FX thread at a time.
+    private record Position(double cur, double total) {}
+    private final AtomicReference<Position> pendingPosition = new AtomicReference<>();
+    private final AtomicLong shownPosition = new AtomicLong(-1);
+    private final StringBuilder timeText = new StringBuilder(16);
+    private boolean positionListened = false;
+
+    // --control=<port|unix:path>: scripts drive the player through the same
+    // buttons and state as the keyboard (see ControlServer). Their commands reach
+    // the FX thread in batches, one runLater for a whole burst. Queries that
+    // only read the playlist and engine (now, list, stats) run on remoteQueries.
+    private ControlServer control;
+    private final CommandQueue remoteCommands = new CommandQueue();
+    private final ExecutorService remoteQueries = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "control-queries");
+        t.setDaemon(true);
+        return t;
+    });
 
     // dancing sprite
-    private ImageView dancer;
-    private java.util.List<Image> danceFrames;
-    private Timeline danceTimeline;
-    private int danceIdx = 0;
+    private DancerSprite dancer;
+    // zero.png's 24 frames are 4 beats of dance; the rate follows the music's
+    // tempo once there is one (see onBeat)
+    private static final double DANCE_FPS = 1000.0 / 90;
+    private static final int DANCE_FRAMES_PER_BEAT = 6;
 
     // Design that is most likely to be fixed later anyway
     private static final String APP_STYLE_NORMAL = """
@@ -129,6 +162,20 @@ public class MainApp extends Application {
     @Override
     public void start(Stage stage) throws Exception {
         stage.setTitle("MusicPlayer");
+        String engineName = getParameters().getNamed().getOrDefault("engine", System.getProperty("player.engine"));
+        engine = AudioEngineProvider.create(engineName);
+        startControlServer(getParameters().getNamed().getOrDefault("control", System.getProperty("player.control")));
+        engine.setBeatListener(new AudioEngine.BeatListener() {
+            @Override
+            public void beat(double seconds, double bpm) {
+                onBeat(seconds, bpm);
+            }
+
+            @Override
+            public void reset() {
+                onNewTempo();
+            }
+        });
 
         // Root container
         root = new StackPane();
@@ -177,6 +224,7 @@ public class MainApp extends Application {
         if (phoneVisible)
             return;
         phoneVisible = true;
+        updatePositionListener();
 
         // clickBlocker.setMouseTransparent(false); // block clicks outside phone
 
@@ -203,6 +251,7 @@ public class MainApp extends Application {
         if (!phoneVisible)
             return;
         phoneVisible = false;
+        updatePositionListener();
 
         // clickBlocker.setMouseTransparent(true);
 
@@ -258,8 +307,7 @@ public class MainApp extends Application {
         // Load music folder once (for now)
         Path folder = getFolderFromArgsOrPrompt(stage);
         if (folder != null && Files.isDirectory(folder)) {
-            playlist.loadFromFolder(folder);
-            musicList.getItems().setAll(playlist.all());
+            loadLibrary(folder);
         }
 
         // Auto-advance (3-stage loop + mix + normal next) - MUST update UI on FX thread
@@ -303,16 +351,7 @@ public class MainApp extends Application {
             // Decide to play or stop the next song
             if (next != null) {
                 engine.play(next);
-                startProgressTimer();
-
-                isPlaying = true;
-                isPaused = false;
-                if (playPauseBtn != null)
-                    playPauseBtn.setText("Pause");
-                statusBar.setText("Playing");
-                nowTrack.setText(next.displayName());
-                musicList.getSelectionModel().select(playlist.index());
-                updateDanceState();
+                showAutoAdvanced(next);
             } else {
                 engine.stop();
                 isPlaying = false;
@@ -324,9 +363,111 @@ public class MainApp extends Application {
             }
         }));
 
+        // Gapless: the engine asks for the next track a few seconds early and starts it
+        // the moment this one ends; onEnd above only runs if it wasn't ready in time.
+        // upcoming may be asked off the FX thread (it only reads); the switch itself
+        // is done on the FX thread.
+        engine.setGapless(true, () -> {
+            Track upcoming = planNextTrackOnEnd();
+            onFx(() -> art.prefetch(upcoming)); // decoded by the time it starts
+            return upcoming;
+        }, next -> onFx(() -> {
+            if (loopMode == LoopMode.ONCE && loopOnceArmed) {
+                // same as the first end in onEnd: the one replay happens, Loop flips to Off
+                loopOnceArmed = false;
+                loopMode = LoopMode.OFF;
+                if (loopBtn != null)
+                    updateLoopButton(loopBtn);
+            }
+            playlist.advanceTo(next);
+            showAutoAdvanced(next);
+        }));
+
         return box;
     }
 
+    private static void onFx(Runnable r) {
+        if (Platform.isFxApplicationThread())
+            r.run();
+        else
+            Platform.runLater(r);
+    }
+
+    private void showAutoAdvanced(Track next) {
+        resetProgress();
+
+        isPlaying = true;
+        isPaused = false;
+        if (playPauseBtn != null)
+            playPauseBtn.setText("Pause");
+        statusBar.setText("Playing");
+        showNowPlaying(next);
+        selectCurrentInList();
+        updateDanceState();
+    }
+
+    // Track label + album art for t. The art may arrive later; by then another
+    // track may be playing, so only apply it if t is still the current one.
+    private void showNowPlaying(Track t) {
+        nowTrack.setText(t.displayName());
+
+        artFor = t;
+        art.get(t, img -> {
+            if (t.equals(artFor)) albumArt.setImage(img != null ? img : defaultArt);
+        });
+
+        // likely next picks: neighbours in the list
+        art.prefetch(playlist.peekNext());
+        art.prefetch(playlist.peekPrev());
+    }
+
+    // Highlight the playing track in the list (by row when unfiltered, else by item)
+    // and refresh the queued count, which drops as queued tracks play
+    private void selectCurrentInList() {
+        setListHeader(listTitle);
+        if (filter.length() == 0)
+            musicList.getSelectionModel().select(playlist.index());
+        else
+            musicList.getSelectionModel().select(playlist.current());
+    }
+
+    // Shows the search results for the typed filter, or the whole library when
+    // it's empty. Keeps the selected track selected if it's still listed.
+    private void applyFilter() {
+        Track keep = musicList.getSelectionModel().getSelectedItem();
+        if (filter.length() == 0) {
+            setListHeader("Music");
+            musicList.getItems().setAll(playlist.all());
+        } else {
+            List<Track> hits = playlist.search(filter.toString(), FILTER_LIMIT);
+            setListHeader("Search: " + filter + "  (" + hits.size() + (hits.size() == FILTER_LIMIT ? "+" : "") + ")");
+            musicList.getItems().setAll(hits);
+        }
+        int i = (keep != null) ? musicList.getItems().indexOf(keep) : -1;
+        if (!musicList.getItems().isEmpty())
+            musicList.getSelectionModel().select(Math.max(i, 0));
+    }
+
+    // Header over the list: what's listed, plus how many tracks are queued
+    private void setListHeader(String title) {
+        listTitle = title;
+        int queued = playlist.queue().size();
+        listHeader.setText(queued > 0 ? title + "  ·  " + queued + " queued" : title);
+    }
+
+    // Shift+Enter plays the selected track next, Ctrl/Cmd+Enter adds it to the queue
+    private void queueSelectedTrack(boolean next) {
+        Track sel = musicList.getSelectionModel().getSelectedItem();
+        if (sel == null)
+            return;
+        if (next)
+            playlist.queue().addFirst(sel);
+        else
+            playlist.queue().addLast(sel);
+        engine.invalidateUpcoming(); // a pre-rolled next track may not be next anymore
+        setListHeader(listTitle);
+    }
+
     // Builds the launcher screen
     private VBox buildLauncherScreen() {
         VBox v = new VBox(10);
@@ -430,99 +571,15 @@ private VBox buildMusicListScreen() {
     v.setAlignment(Pos.TOP_CENTER);
 
     Label header = new Label("Music");
+    listHeader = header;
     header.setStyle("-fx-text-fill: rgba(255,255,255,0.7); -fx-font-size: 12;");
 
     musicList.setFixedCellSize(48);
     musicList.setPrefWidth(PHONE_W - 28);
     musicList.setMaxWidth(PHONE_W - 28);
     
-    musicList.setCellFactory(lv -> new ListCell<>() {
-        private final Label title = new Label();
-        private final Label artist = new Label();
-        private final VBox textBox = new VBox(2, title, artist);
-
-        {
-            title.setStyle("""
-                -fx-text-fill: black;
-                -fx-font-size: 12;
-                -fx-font-weight: bold;
-            """);
-
-            artist.setStyle("""
-                -fx-text-fill: black;
-                -fx-font-size: 10;
-            """);
-
-            textBox.setAlignment(Pos.CENTER_LEFT);
-            textBox.setMaxWidth(PHONE_W - 50);
-
-            setText(null);
-            setGraphic(textBox);
-            setPadding(new Insets(6, 8, 6, 8));
-
-            Rectangle clip = new Rectangle();
-            clip.widthProperty().bind(widthProperty().subtract(16));
-            clip.heightProperty().bind(heightProperty());
-            textBox.setClip(clip);
-        }
-
-        @Override
-        protected void updateItem(Track item, boolean empty) {
-            super.updateItem(item, empty);
-
-            if (empty || item == null) {
-                setGraphic(null);
-                setText(null);
-                setStyle("-fx-background-color: transparent;");
-                return;
-            }
-
-            title.setText(item.displayName());
-            title.setMinWidth(Region.USE_PREF_SIZE);
-            title.setMaxWidth(Region.USE_PREF_SIZE);
-            title.setWrapText(false);
-
-            artist.setText("Unknown Artist");
-
-            setGraphic(textBox);
-            updateSelectionStyle();
-        }
-
-        @Override
-        public void updateSelected(boolean selected) {
-            super.updateSelected(selected);
-            updateSelectionStyle();
-
-            if (marquee != null) marquee.stop();
-            title.setTranslateX(0);
-
-            if (selected) {
-                double overflow = title.getWidth() - (musicList.getWidth() - 40);
-                if (overflow > 0) {
-                    marquee = new TranslateTransition(Duration.seconds(overflow / 30), title);
-                    marquee.setFromX(0);
-                    marquee.setToX(-overflow);
-                    marquee.setAutoReverse(true);
-                    marquee.setCycleCount(TranslateTransition.INDEFINITE);
-                    marquee.play();
-                }
-            }
-        }
-
-        private void updateSelectionStyle() {
-            if (isSelected()) {
-                setStyle("""
-                    -fx-background-color: rgba(76,175,80,0.85);
-                    -fx-background-radius: 10;
-                """);
-            } else {
-                setStyle("""
-                    -fx-background-color: rgba(255,255,255,0.05);
-                    -fx-background-radius: 10;
-                """);
-            }
-        }
-    });
+    musicList.getStylesheets().add(getClass().getResource(TrackCell.STYLESHEET).toExternalForm());
+    musicList.setCellFactory(lv -> new TrackCell(PHONE_W - 50, playlist::prioritizeMetadata));
 
     // Hide ALL scrollbars
     musicList.lookupAll(".scroll-bar").forEach(node -> {
@@ -576,6 +633,16 @@ private VBox buildMusicListScreen() {
     VBox.setVgrow(musicList, Priority.ALWAYS);
     v.getChildren().addAll(header, musicList);
 
+    // Typing on the list filters it (see applyFilter); KEY_PRESSED below handles Backspace/ESC
+    musicList.addEventFilter(KeyEvent.KEY_TYPED, e -> {
+        String c = e.getCharacter();
+        if (c.isEmpty() || c.charAt(0) < 0x20 || c.charAt(0) == 0x7F)
+            return; // Enter, Backspace, ESC also arrive as typed characters
+        filter.append(c);
+        applyFilter();
+        e.consume();
+    });
+
     // COMPLETELY DISABLE ALL TRACKPAD/MOUSE SCROLLING
     musicList.addEventFilter(ScrollEvent.ANY, ScrollEvent::consume);
     musicList.setOnScroll(ScrollEvent::consume);
@@ -594,7 +661,8 @@ private VBox buildMusicListScreen() {
         v.setPadding(new Insets(10, 0, 0, 0));
 
         // Album image (top-middle)
-        albumArt = new ImageView(loadOptionalImage("/sprites/album.png"));
+        defaultArt = loadOptionalImage("/sprites/album.png");
+        albumArt = new ImageView(defaultArt);
         albumArt.setFitWidth(140);
         albumArt.setFitHeight(140);
         albumArt.setPreserveRatio(true);
@@ -633,43 +701,21 @@ private VBox buildMusicListScreen() {
         });
 
         // Controls row
-        Button prev = new Button("Prev");
+        prevBtn = new Button("Prev");
         playPauseBtn = new ToggleButton("Play"); // <- start not playing
-        Button stop = new Button("Stop");
-        Button next = new Button("Next");
+        stopBtn = new Button("Stop");
+        nextBtn = new Button("Next");
 
-        prev.setOnAction(e -> {
+        prevBtn.setOnAction(e -> {
             Track t = playlist.prev();
-            if (t != null) {
-                engine.play(t);
-                startProgressTimer();
-
-                isPlaying = true;
-                isPaused = false;
-                playPauseBtn.setText("Pause");
-
-                musicList.getSelectionModel().select(playlist.index());
-                nowTrack.setText(t.displayName());
-                statusBar.setText("Playing");
-                updateDanceState();
-            }
+            if (t != null)
+                playTrack(t);
         });
 
-        next.setOnAction(e -> {
+        nextBtn.setOnAction(e -> {
             Track t = pickNextManual(); // respects Mix
-            if (t != null) {
-                engine.play(t);
-                startProgressTimer();
-
-                isPlaying = true;
-                isPaused = false;
-                playPauseBtn.setText("Pause");
-
-                musicList.getSelectionModel().select(playlist.index());
-                nowTrack.setText(t.displayName());
-                statusBar.setText("Playing");
-                updateDanceState();
-            }
+            if (t != null)
+                playTrack(t);
         });
 
         playPauseBtn.setOnAction(e -> {
@@ -697,20 +743,20 @@ private VBox buildMusicListScreen() {
             }
         });
 
-        stop.setOnAction(e -> {
+        stopBtn.setOnAction(e -> {
             engine.stop();
             isPlaying = false;
             isPaused = false;
             statusBar.setText("Stopped");
             playPauseBtn.setText("Play");
-            stopProgressTimer();
+            resetProgress();
             progress.setValue(0);
             timeLabel.setText("0:00 / 0:00");
             updateDanceState();
 
         });
 
-        HBox row1 = new HBox(6, prev, playPauseBtn, stop, next);
+        HBox row1 = new HBox(6, prevBtn, playPauseBtn, stopBtn, nextBtn);
         row1.setAlignment(Pos.CENTER);
 
         // Loop + Mix row
@@ -737,15 +783,18 @@ private VBox buildMusicListScreen() {
                 }
             };
             updateLoopButton(loopBtn);
+            engine.invalidateUpcoming(); // a pre-rolled next track may not be right anymore
         });
 
         mixBtn.setOnAction(e -> {
             mix = mixBtn.isSelected();
+            playlist.setShuffle(mix);
             mixBtn.setStyle(mix ? "-fx-background-color: #ff9800; -fx-text-fill: black;" : "");
+            engine.invalidateUpcoming();
         });
 
         playerBtns.clear();
-        playerBtns.addAll(List.of(prev, playPauseBtn, stop, next, loopBtn, mixBtn));
+        playerBtns.addAll(List.of(prevBtn, playPauseBtn, stopBtn, nextBtn, loopBtn, mixBtn));
 
         HBox row2 = new HBox(8, loopBtn, mixBtn);
         row2.setAlignment(Pos.CENTER);
@@ -768,19 +817,7 @@ private VBox buildMusicListScreen() {
         if (playlist.isEmpty())
             return null;
 
-        if (mix) {
-            int n = playlist.size();
-            if (n <= 1)
-                return playlist.current();
-            int cur = playlist.index();
-            int r;
-            do {
-                r = rng.nextInt(n);
-            } while (r == cur);
-            return playlist.setIndex(r);
-        }
-
-        return playlist.next();
+        return playlist.next(); // shuffled while Mix is on
     }
 
     // Helper (optional but recommended): keep loop button visuals in one place
@@ -825,7 +862,10 @@ private VBox buildMusicListScreen() {
 
             // ESC behavior: go back one level; if already launcher -> hide phone
             if (e.getCode() == KeyCode.ESCAPE) {
-                if (screen == Screen.MUSIC_PLAYER) {
+                if (screen == Screen.MUSIC_LIST && filter.length() > 0) {
+                    filter.setLength(0); // first ESC only clears the search
+                    applyFilter();
+                } else if (screen == Screen.MUSIC_PLAYER) {
                     showScreen(Screen.MUSIC_LIST);
                     Platform.runLater(musicList::requestFocus);
                 } else if (screen == Screen.MUSIC_LIST) {
@@ -885,39 +925,65 @@ private VBox buildMusicListScreen() {
                     return; // let ListView handle selection
                 }
 
+                if (e.getCode() == KeyCode.ENTER && (e.isShiftDown() || e.isShortcutDown())) {
+                    queueSelectedTrack(e.isShiftDown());
+                    e.consume();
+                    return;
+                }
+
                 if (e.getCode() == KeyCode.ENTER) {
                     playSelectedTrack(); // switches to MUSIC_PLAYER
                     e.consume();
                     return;
                 }
 
+                if (e.getCode() == KeyCode.BACK_SPACE && filter.length() > 0) {
+                    filter.setLength(filter.length() - 1);
+                    applyFilter();
+                    e.consume();
+                    return;
+                }
+
                 e.consume();
             }
             // ------------------------------------------------------------
         });
     }
 
+    // Plays t (already current in the playlist) and shows it, staying on this screen
+    private void playTrack(Track t) {
+        engine.play(t);
+        resetProgress();
+
+        isPlaying = true;
+        isPaused = false;
+        playPauseBtn.setText("Pause");
+
+        selectCurrentInList();
+        showNowPlaying(t);
+        statusBar.setText("Playing");
+        updateDanceState();
+    }
+
     private void playSelectedTrack() {
         if (playlist.isEmpty())
             return;
 
-        int sel = musicList.getSelectionModel().getSelectedIndex();
-        if (sel < 0)
-            sel = 0;
-
-        Track t = playlist.setIndex(sel);
+        // The list may be filtered, so go by the selected track rather than its row
+        Track sel = musicList.getSelectionModel().getSelectedItem();
+        Track t = (sel != null && playlist.moveTo(sel) >= 0) ? playlist.current() : playlist.setIndex(0);
         if (t == null)
             return;
 
         engine.play(t);
-        startProgressTimer();
+        resetProgress();
 
         isPlaying = true;
 
         // update player state/UI
         isPaused = false;
         playPauseBtn.setText("Pause");
-        nowTrack.setText(t.displayName());
+        showNowPlaying(t);
         statusBar.setText("Playing");
 
         // go to player screen, then focus the play/pause button
@@ -973,6 +1039,7 @@ private VBox buildMusicListScreen() {
         setScreenVisible(launcherScreen, s == Screen.LAUNCHER);
         setScreenVisible(musicListScreen, s == Screen.MUSIC_LIST);
         setScreenVisible(musicPlayerScreen, s == Screen.MUSIC_PLAYER);
+        updatePositionListener();
     }
 
     private static void setScreenVisible(Region node, boolean visible) {
@@ -983,6 +1050,16 @@ private VBox buildMusicListScreen() {
     // ---------------- Playback logic ----------------
 
     private Track pickNextTrackOnEnd() {
+        Track next = planNextTrackOnEnd();
+        if (next != null)
+            playlist.advanceTo(next);
+        return next;
+    }
+
+    // Same decision as pickNextTrackOnEnd, but leaves the playlist where it is.
+    // The gapless engine calls this before the track ends; the move happens once
+    // the next track actually starts.
+    private Track planNextTrackOnEnd() {
         if (playlist.isEmpty())
             return null;
 
@@ -991,26 +1068,76 @@ private VBox buildMusicListScreen() {
             return playlist.current();
         }
 
-        // Otherwise advance (respect Mix)
-        if (mix) {
-            int n = playlist.size();
-            if (n <= 1)
-                return playlist.current();
-            int cur = playlist.index();
-            int r;
-            do {
-                r = rng.nextInt(n);
-            } while (r == cur);
-            return playlist.setIndex(r);
-        }
+        // Otherwise advance (shuffled while Mix is on)
+        return playlist.peekNext();
+    }
 
-        return playlist.next();
+    // ---------------- Library loading ----------------
+
+    // Scan runs in the background: rows show up batch by batch while it runs,
+    // then the list is replaced once with the final sorted order.
+    private void loadLibrary(Path folder) {
+        // Tags arrive in batches from the loader threads; one redraw per batch
+        playlist.setMetadataListener(batch -> Platform.runLater(musicList::refresh));
+
+        playlist.loadFromFolderAsync(folder, batch -> Platform.runLater(() -> {
+            if (filter.length() > 0)
+                return; // results are refreshed once the scan is done
+            boolean first = musicList.getItems().isEmpty();
+            musicList.getItems().addAll(batch);
+            if (first)
+                musicList.getSelectionModel().select(0);
+        })).whenComplete((n, err) -> Platform.runLater(() -> {
+            if (err != null) {
+                statusBar.setText("Scan failed");
+                return;
+            }
+            if (filter.length() > 0) {
+                applyFilter();
+                watchLibrary();
+                return;
+            }
+            musicList.getItems().setAll(playlist.all());
+            int sel = isPlaying ? playlist.index() : 0;
+            if (sel >= 0 && !musicList.getItems().isEmpty())
+                musicList.getSelectionModel().select(sel);
+            watchLibrary();
+        }));
+    }
+
+    // From here on the list only changes one row at a time (no setAll), so the
+    // ListView keeps its selection and scroll position. Deltas run on the FX thread.
+    private void watchLibrary() {
+        playlist.setListener(new Playlist.Listener() {
+            @Override
+            public void onInserted(int index, Track t) {
+                if (filter.length() > 0) applyFilter(); // rows are search results, not playlist indexes
+                else musicList.getItems().add(index, t);
+            }
+
+            @Override
+            public void onRemoved(int[] indexes) {
+                if (filter.length() > 0) applyFilter(); // once for the whole folder
+                else musicItems.removeIndexes(indexes);
+            }
+
+            @Override
+            public void onUpdated(int index, Track t) {
+                if (filter.length() > 0) applyFilter();
+                else musicList.getItems().set(index, t);
+            }
+        });
+        try {
+            playlist.startWatching(Platform::runLater);
+        } catch (IOException e) {
+            System.out.println("Folder watching unavailable: " + e.getMessage());
+        }
     }
 
     // ---------------- Folder selection ----------------
 
     private Path getFolderFromArgsOrPrompt(Stage stage) {
-        var args = getParameters().getRaw();
+        var args = getParameters().getUnnamed();
         if (!args.isEmpty())
             return Paths.get(args.get(0));
 
@@ -1020,103 +1147,166 @@ private VBox buildMusicListScreen() {
         return (chosen == null) ? null : chosen.toPath();
     }
 
-    private static String mmss(double seconds) {
-        if (seconds < 0)
-            seconds = 0;
-        int s = (int) Math.floor(seconds + 0.0001);
-        int m = s / 60;
-        s = s % 60;
-        return m + ":" + String.format("%02d", s);
+    // Any engine thread. Events faster than the FX thread draws them replace
+    // each other instead of queueing up.
+    private void onPosition(double cur, double total) {
+        if (pendingPosition.getAndSet(new Position(cur, total)) == null)
+            onFx(this::showPosition);
     }
 
-    private void startProgressTimer() {
-        if (progressTimer != null)
-            progressTimer.stop();
-
-        progressTimer = new Timeline(new KeyFrame(Duration.millis(200), e -> {
-            if (progress == null)
-                return;
-            if (!isPlaying)
-                return;
-
-            double cur = engine.getCurrentSeconds();
-            double total = engine.getTotalSeconds();
+    private void showPosition() {
+        Position p = pendingPosition.getAndSet(null);
+        if (p == null || progress == null || !isPlaying)
+            return;
+        double cur = p.cur(), total = p.total();
+        if (!userScrubbing)
+            progress.setValue(total > 0.001 ? cur / total : 0);
+        long key = ((long) wholeSeconds(cur) << 32) | wholeSeconds(total);
+        if (shownPosition.getAndSet(key) == key)
+            return;
+        timeText.setLength(0);
+        appendMmss(timeText, cur).append(" / ");
+        appendMmss(timeText, total > 0.001 ? total : 0);
+        timeLabel.setText(timeText.toString());
+    }
 
-            if (total <= 0.001) {
-                timeLabel.setText(mmss(cur) + " / 0:00");
-                if (!userScrubbing)
-                    progress.setValue(0);
-                return;
-            }
+    // Position events only while the player screen is on show
+    private void updatePositionListener() {
+        boolean want = phoneVisible && screen == Screen.MUSIC_PLAYER;
+        if (want == positionListened || engine == null)
+            return;
+        positionListened = want;
+        shownPosition.set(-1); // redraw on the first event
+        engine.setPositionListener(want ? this::onPosition : null);
+    }
 
-            timeLabel.setText(mmss(cur) + " / " + mmss(total));
+    // A new track (or a stop): the next position is drawn whatever it is
+    private void resetProgress() {
+        shownPosition.set(-1);
+    }
 
-            if (!userScrubbing) {
-                progress.setValue(cur / total);
-            }
-        }));
-        progressTimer.setCycleCount(Timeline.INDEFINITE);
-        progressTimer.play();
+    private static int wholeSeconds(double seconds) {
+        return (int) Math.floor(Math.max(0, seconds) + 0.0001);
     }
 
-    private void stopProgressTimer() {
-        if (progressTimer != null)
-            progressTimer.stop();
+    private static StringBuilder appendMmss(StringBuilder sb, double seconds) {
+        int s = wholeSeconds(seconds);
+        sb.append(s / 60).append(':');
+        if (s % 60 < 10)
+            sb.append('0');
+        return sb.append(s % 60);
     }
 
     private void initDancer() {
-        Image sheet = new Image(
-                getClass().getResource("/sprites/zero.png").toExternalForm());
-
-        int cols = 8;
-        int rows = 3;
-        int frameW = (int) sheet.getWidth() / cols;
-        int frameH = (int) sheet.getHeight() / rows;
-
-        dancer = new ImageView(sheet);
-        dancer.setViewport(new javafx.geometry.Rectangle2D(0, 0, frameW, frameH));
-        dancer.setSmooth(false);
-
+        // zero.png: 8 x 3 frames, one every 90 ms until a tempo is known
+        dancer = new DancerSprite(SpriteSheet.load("/sprites/zero.png", 8, 3, 24), DANCE_FPS, 0, 1);
         StackPane.setAlignment(dancer, Pos.BOTTOM_RIGHT);
         StackPane.setMargin(dancer, new Insets(0, 30, 30, 0));
+    }
 
-        danceTimeline = new Timeline(new KeyFrame(Duration.millis(90), e -> {
-            danceIdx = (danceIdx + 1) % (cols * rows);
-            int x = (danceIdx % cols) * frameW;
-            int y = (danceIdx / cols) * frameH;
-            dancer.setViewport(new javafx.geometry.Rectangle2D(x, y, frameW, frameH));
-        }));
-        danceTimeline.setCycleCount(Timeline.INDEFINITE);
-
-        danceFrameW = (int) sheet.getWidth() / cols;
-        danceFrameH = (int) sheet.getHeight() / rows;
+    // From the engine on every detected beat (the JavaFX one calls it on the FX
+    // thread, where nothing is allocated for it)
+    private void onBeat(double seconds, double bpm) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> onBeat(seconds, bpm));
+            return;
+        }
+        if (dancer == null || !dancer.isDancing())
+            return;
+        if (bpm > 0)
+            dancer.setFps(bpm / 60 * DANCE_FRAMES_PER_BEAT);
+        dancer.onBeat(DANCE_FRAMES_PER_BEAT);
+    }
 
-        dancer.setViewport(new javafx.geometry.Rectangle2D(0, 0, danceFrameW, danceFrameH));
+    // A new track: back to the default rate until its tempo is known (FX thread)
+    private void onNewTempo() {
+        if (dancer != null)
+            dancer.setFps(DANCE_FPS);
+    }
 
+    private void updateDanceState() {
+        if (dancer == null)
+            return;
+        if (isPlaying && !isPaused)
+            dancer.startDancing();
+        else
+            dancer.stopDancing();
     }
 
-    // add these fields near dancer fields
-    private int danceFrameW;
-    private int danceFrameH;
+    // ---------------- Control server ----------------
 
-    private void updateDanceState() {
-        boolean shouldDance = isPlaying && !isPaused;
-        if (danceTimeline == null || dancer == null)
+    private void startControlServer(String spec) {
+        if (spec == null)
             return;
+        try {
+            control = ControlServer.open(spec, this::remote);
+            engine = new PublishingEngine(engine, control::publish);
+            System.out.println("Control server on " + control.address());
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Control server unavailable: " + e.getMessage());
+        }
+    }
 
-        if (shouldDance) {
-            if (danceTimeline.getStatus() != javafx.animation.Animation.Status.RUNNING) {
-                danceTimeline.play();
+    // Seeks and volume changes that pile up collapse into the last one. A big
+    // list page is formatted off the FX thread, so it doesn't freeze the UI.
+    private CompletableFuture<String> remote(String cmd, String args) {
+        switch (cmd) {
+            case "now", "list", "stats" -> {
+                return CompletableFuture.supplyAsync(() -> remoteQuery(cmd, args), remoteQueries);
             }
-        } else {
-            danceTimeline.stop();
-            danceIdx = 0;
-            dancer.setViewport(new javafx.geometry.Rectangle2D(0, 0, danceFrameW, danceFrameH));
         }
+        CommandQueue.Kind kind = switch (cmd) {
+            case "seek" -> CommandQueue.Kind.SEEK;
+            case "vol" -> CommandQueue.Kind.VOLUME;
+            default -> CommandQueue.Kind.OTHER;
+        };
+        return remoteCommands.submit(kind, () -> remoteOnFx(cmd, args));
+    }
+
+    // Buttons are fired where there is one, so the phone shows what happened
+    private String remoteOnFx(String cmd, String args) {
+        switch (cmd) {
+            case "play" -> playTrack(playlist.setIndex(Integer.parseInt(args)));
+            case "pause" -> {
+                if (isPlaying && !isPaused)
+                    playPauseBtn.fire();
+            }
+            case "resume" -> {
+                if (isPlaying && isPaused)
+                    playPauseBtn.fire();
+            }
+            case "stop" -> stopBtn.fire();
+            case "next" -> nextBtn.fire();
+            case "prev" -> prevBtn.fire();
+            case "seek" -> engine.seekSeconds(Double.parseDouble(args));
+            case "vol" -> engine.setVolume(Double.parseDouble(args));
+            case "crossfade" -> {
+                return Main.crossfade(engine, args);
+            }
+            default -> throw new IllegalArgumentException("unknown command: " + cmd);
+        }
+        return nowPlaying();
+    }
+
+    private String remoteQuery(String cmd, String args) {
+        return switch (cmd) {
+            case "list" -> playlist.list(ListQuery.parse(args));
+            case "stats" -> engine.stats().describe();
+            default -> nowPlaying();
+        };
+    }
+
+    private String nowPlaying() {
+        return engine.nowPlaying("[" + playlist.index() + "] ", isPlaying ? playlist.current() : null);
     }
 
     @Override
     public void stop() {
+        if (control != null)
+            control.close();
+        remoteQueries.shutdown();
+        playlist.stopWatching();
+        art.close();
         engine.shutdown(); // stops music only when app exits
     }
 
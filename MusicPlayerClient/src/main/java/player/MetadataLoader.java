@@ -0,0 +1,165 @@
+package player;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Fills in Track.info() in the background with a small, fixed set of worker
+// threads. Finished tracks are collected and handed out in batches every
+// PUBLISH_MS, so the UI redraws a few times a second instead of once per file.
+// Rows the user is looking at can jump the queue with prioritize().
+//
+// Whole batches are queued as id arrays of their TrackStore, so a million-track
+// backlog costs 4 bytes per track rather than a Track and a queue node each.
+public class MetadataLoader implements AutoCloseable {
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final long PUBLISH_MS = 100;
+
+    // A queued batch; next is the first id not handed to a worker yet
+    private static final class Run {
+        final TrackStore store;
+        final int[] ids;
+        int next = 0;
+
+        Run(TrackStore store, int[] ids) {
+            this.store = store;
+            this.ids = ids;
+        }
+    }
+
+    private final ArrayDeque<Track> urgent = new ArrayDeque<>(); // guarded by this
+    private final ArrayDeque<Run> backlog = new ArrayDeque<>();  // guarded by this
+    private final ConcurrentLinkedQueue<Track> done = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger busy = new AtomicInteger();
+    private final Consumer<List<Track>> onBatch;
+    private final Runnable onIdle;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService publisher;
+    private boolean loadedSinceIdle = false; // publisher thread only
+    private volatile boolean running = true;
+
+    // onBatch gets every finished batch; onIdle runs once the queue has drained
+    // after some work. Both are called on the loader's publisher thread.
+    public MetadataLoader(Consumer<List<Track>> onBatch, Runnable onIdle) {
+        this.onBatch = onBatch;
+        this.onIdle = onIdle;
+
+        for (int i = 0; i < THREADS; i++) {
+            Thread t = new Thread(this::work, "metadata-" + i);
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.start();
+            workers.add(t);
+        }
+        publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metadata-publish");
+            t.setDaemon(true);
+            return t;
+        });
+        publisher.scheduleWithFixedDelay(this::publish, PUBLISH_MS, PUBLISH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Queues the tracks of ids[] (in store) that have no tags yet
+    void submit(TrackStore store, int[] ids) {
+        int n = 0;
+        int[] todo = new int[ids.length];
+        for (int id : ids) if (store.info(id) == null) todo[n++] = id;
+        if (n == 0) return;
+        synchronized (this) {
+            backlog.addLast(new Run(store, (n == ids.length) ? todo : Arrays.copyOf(todo, n)));
+            notifyAll();
+        }
+    }
+
+    public void submit(Track t) {
+        if (t.info() != null) return;
+        synchronized (this) {
+            backlog.addLast(new Run(t.store(), new int[] { t.id() }));
+            notifyAll();
+        }
+    }
+
+    // Read this one next (e.g. it just scrolled into view). A track can end up
+    // queued twice; the second copy is skipped once the first filled it in.
+    public void prioritize(Track t) {
+        if (t.info() != null) return;
+        synchronized (this) {
+            urgent.addFirst(t);
+            notifyAll();
+        }
+    }
+
+    private synchronized Track take() throws InterruptedException {
+        while (true) {
+            Track t = urgent.pollFirst();
+            if (t != null) return t;
+            Run r = backlog.peekFirst();
+            if (r != null) {
+                int id = r.ids[r.next++];
+                if (r.next == r.ids.length) backlog.pollFirst();
+                return r.store.track(id);
+            }
+            wait();
+        }
+    }
+
+    private synchronized boolean queueEmpty() {
+        return urgent.isEmpty() && backlog.isEmpty();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        publisher.shutdownNow();
+        for (Thread t : workers) t.interrupt();
+    }
+
+    private void work() {
+        while (running) {
+            Track t;
+            try {
+                t = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (t.info() != null) continue;
+
+            busy.incrementAndGet();
+            try {
+                t.setInfo(MetadataReader.read(t.path()));
+            } catch (IOException | RuntimeException e) {
+                t.setInfo(TrackInfo.EMPTY); // unreadable or odd file: don't retry forever
+            }
+            done.add(t);
+            busy.decrementAndGet();
+        }
+    }
+
+    private void publish() {
+        try {
+            publishBatch();
+        } catch (RuntimeException e) {
+            // a failing listener must not cancel the scheduled task
+            System.out.println("Metadata listener failed: " + e);
+        }
+    }
+
+    private void publishBatch() {
+        List<Track> batch = new ArrayList<>();
+        for (Track t; (t = done.poll()) != null; ) batch.add(t);
+
+        if (!batch.isEmpty()) {
+            loadedSinceIdle = true;
+            onBatch.accept(batch);
+        }
+        if (loadedSinceIdle && queueEmpty() && busy.get() == 0 && done.isEmpty()) {
+            loadedSinceIdle = false;
+            onIdle.run();
+        }
+    }
+}
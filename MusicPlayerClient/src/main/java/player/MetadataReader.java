@@ -0,0 +1,403 @@
+package player;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Reads tags straight from the file header with a few small positional reads,
+// instead of opening a JavaFX Media per file (which decodes and is slow).
+// Handles ID3v2.2-2.4 (mp3/aac), MP4 atoms (m4a) and RIFF/WAVE.
+// Only the location of embedded cover art is recorded, never the image bytes.
+final class MetadataReader {
+    private static final int MAX_TEXT = 1024; // longer tag values are cut off
+
+    private MetadataReader() {}
+
+    static TrackInfo read(Path p) throws IOException {
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            ByteBuffer head = readAt(ch, 0, 12);
+            if (head.remaining() < 12) return TrackInfo.EMPTY;
+
+            if (ascii(head, 0, 3).equals("ID3")) return readId3(ch, Playlist.ext(p));
+            if (ascii(head, 0, 4).equals("RIFF") && ascii(head, 8, 4).equals("WAVE")) return readWav(ch);
+            if (ascii(head, 4, 4).equals("ftyp")) return readMp4(ch);
+
+            // untagged mp3 / aac: at least get the length
+            long dur = "aac".equals(Playlist.ext(p)) ? adtsDuration(ch, 0) : mpegDuration(ch, 0);
+            return new TrackInfo(null, null, null, -1, dur, -1, -1);
+        }
+    }
+
+    // ---------------- ID3v2 ----------------
+
+    private static TrackInfo readId3(FileChannel ch, String ext) throws IOException {
+        ByteBuffer h = readAt(ch, 0, 10);
+        int major = h.get(3) & 0xFF;
+        int flags = h.get(5) & 0xFF;
+        long end = 10L + syncsafe(h, 6);
+        long audioStart = end + ((flags & 0x10) != 0 ? 10 : 0); // footer
+
+        long pos = 10;
+        if ((flags & 0x40) != 0) { // extended header
+            ByteBuffer e = readAt(ch, 10, 4);
+            pos += (major == 4) ? syncsafe(e, 0) : e.getInt(0) + 4;
+        }
+
+        boolean v22 = major == 2;
+        int idLen = v22 ? 3 : 4;
+        int hdrLen = v22 ? 6 : 10;
+
+        String title = null, artist = null, album = null;
+        long durationMs = -1, artOffset = -1;
+        int artLength = -1, trackNo = -1;
+        boolean frontCover = false;
+
+        while (pos + hdrLen <= end) {
+            ByteBuffer fh = readAt(ch, pos, hdrLen);
+            if (fh.remaining() < hdrLen || fh.get(0) == 0) break; // EOF or padding
+
+            String id = ascii(fh, 0, idLen);
+            int size = v22 ? u24(fh, 3) : (major == 4 ? syncsafe(fh, 4) : fh.getInt(4));
+            long body = pos + hdrLen;
+            if (size <= 0 || body + size > end) break;
+
+            switch (id) {
+                case "TIT2", "TT2" -> title = id3Text(readAt(ch, body, Math.min(size, MAX_TEXT)));
+                case "TPE1", "TP1" -> artist = id3Text(readAt(ch, body, Math.min(size, MAX_TEXT)));
+                case "TALB", "TAL" -> album = id3Text(readAt(ch, body, Math.min(size, MAX_TEXT)));
+                case "TRCK", "TRK" -> trackNo = trackNumber(id3Text(readAt(ch, body, Math.min(size, 32))));
+                case "TLEN", "TLE" -> durationMs = parseLong(id3Text(readAt(ch, body, Math.min(size, 32))));
+                case "APIC", "PIC" -> {
+                    // Keep the first picture, but prefer the front cover (type 3)
+                    if (artOffset < 0 || !frontCover) {
+                        int[] pic = pictureHeader(readAt(ch, body, Math.min(size, MAX_TEXT)), v22);
+                        if (pic != null && pic[0] < size && (artOffset < 0 || pic[1] == 3)) {
+                            artOffset = body + pic[0];
+                            artLength = size - pic[0];
+                            frontCover = pic[1] == 3;
+                        }
+                    }
+                }
+                default -> { }
+            }
+            pos = body + size;
+        }
+
+        if (durationMs <= 0) {
+            durationMs = "aac".equals(ext) ? adtsDuration(ch, audioStart) : mpegDuration(ch, audioStart);
+        }
+        return new TrackInfo(title, artist, album, trackNo, durationMs, artOffset, artLength);
+    }
+
+    // APIC body: enc, mime\0, picType, description\0 (\0\0 for UTF-16), image.
+    // PIC (v2.2) has a fixed 3-char format instead of the mime type.
+    // Returns {offset of the image bytes inside the body, picture type}, or null.
+    private static int[] pictureHeader(ByteBuffer b, boolean v22) {
+        int enc = b.get(0) & 0xFF;
+        int i = 4;
+        if (!v22) {
+            i = 1;
+            while (i < b.limit() && b.get(i) != 0) i++;
+            i++;
+        }
+        if (i >= b.limit()) return null;
+        int type = b.get(i) & 0xFF;
+
+        boolean wide = enc == 1 || enc == 2;
+        for (i++; i + (wide ? 1 : 0) < b.limit(); i += wide ? 2 : 1) {
+            if (b.get(i) == 0 && (!wide || b.get(i + 1) == 0)) {
+                return new int[] { i + (wide ? 2 : 1), type };
+            }
+        }
+        return null;
+    }
+
+    private static String id3Text(ByteBuffer b) {
+        if (b.remaining() < 2) return null;
+        Charset cs = switch (b.get(0)) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        byte[] raw = new byte[b.remaining() - 1];
+        b.position(1);
+        b.get(raw);
+        return clean(new String(raw, cs));
+    }
+
+    // ---------------- MPEG audio / ADTS length ----------------
+
+    private static final int[][] MPEG_KBPS = {
+            { 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 }, // V1 L1
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },    // V1 L2
+            { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },     // V1 L3
+            { 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },    // V2 L1
+            { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 },         // V2 L2/L3
+    };
+    private static final int[] MPEG_RATES = { 44100, 48000, 32000 };
+
+    // Xing/Info or VBRI frame count if present, otherwise a CBR estimate
+    // from the first frame's bitrate.
+    static long mpegDuration(FileChannel ch, long start) throws IOException {
+        ByteBuffer b = readAt(ch, start, 4096);
+        for (int i = 0; i + 4 <= b.limit(); i++) {
+            int h = b.getInt(i);
+            if ((h & 0xFFE00000) != 0xFFE00000) continue;
+
+            int ver = (h >>> 19) & 3;   // 3 = MPEG1, 2 = MPEG2, 0 = MPEG2.5
+            int layer = (h >>> 17) & 3; // 3 = I, 2 = II, 1 = III
+            int brIdx = (h >>> 12) & 0xF;
+            int srIdx = (h >>> 10) & 3;
+            if (ver == 1 || layer == 0 || brIdx == 0 || brIdx == 15 || srIdx == 3) continue;
+
+            boolean v1 = ver == 3;
+            int sampleRate = MPEG_RATES[srIdx] >> (v1 ? 0 : (ver == 2 ? 1 : 2));
+            int table = v1 ? (3 - layer) : (layer == 3 ? 3 : 4);
+            long bitrate = MPEG_KBPS[table][brIdx] * 1000L;
+            int samplesPerFrame = (layer == 3) ? 384 : (layer == 2 || v1) ? 1152 : 576;
+            boolean mono = ((h >>> 6) & 3) == 3;
+
+            int xing = i + 4 + (v1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+            if (xing + 12 <= b.limit()) {
+                String tag = ascii(b, xing, 4);
+                if ((tag.equals("Xing") || tag.equals("Info")) && (b.getInt(xing + 4) & 1) != 0) {
+                    return b.getInt(xing + 8) * (long) samplesPerFrame * 1000 / sampleRate;
+                }
+            }
+            int vbri = i + 4 + 32;
+            if (vbri + 18 <= b.limit() && ascii(b, vbri, 4).equals("VBRI")) {
+                return b.getInt(vbri + 14) * (long) samplesPerFrame * 1000 / sampleRate;
+            }
+            return (ch.size() - start - i) * 8 * 1000 / bitrate;
+        }
+        return -1;
+    }
+
+    private static final int[] AAC_RATES = {
+            96000, 88200, 64000, 48000, 44100, 32000, 24000, 22050, 16000, 12000, 11025, 8000, 7350 };
+
+    // Averages the bitrate over the ADTS frames in the first few KB
+    static long adtsDuration(FileChannel ch, long start) throws IOException {
+        ByteBuffer b = readAt(ch, start, 8192);
+        int i = 0;
+        while (i + 7 <= b.limit() && !((b.get(i) & 0xFF) == 0xFF && (b.get(i + 1) & 0xF6) == 0xF0)) i++;
+
+        long bytes = 0;
+        int frames = 0, sampleRate = 0;
+        while (i + 7 <= b.limit() && (b.get(i) & 0xFF) == 0xFF && (b.get(i + 1) & 0xF6) == 0xF0) {
+            int srIdx = (b.get(i + 2) >> 2) & 0xF;
+            if (srIdx >= AAC_RATES.length) break;
+            sampleRate = AAC_RATES[srIdx];
+            int len = ((b.get(i + 3) & 0x3) << 11) | ((b.get(i + 4) & 0xFF) << 3) | ((b.get(i + 5) & 0xE0) >> 5);
+            if (len < 7) break;
+            bytes += len;
+            frames++;
+            i += len;
+        }
+        if (frames == 0 || sampleRate == 0) return -1;
+        double bytesPerSecond = bytes / (frames * 1024.0 / sampleRate);
+        return (long) ((ch.size() - start) / bytesPerSecond * 1000);
+    }
+
+    // ---------------- MP4 / M4A ----------------
+
+    private static TrackInfo readMp4(FileChannel ch) throws IOException {
+        long[] moov = child(ch, 0, ch.size(), "moov");
+        if (moov == null) return TrackInfo.EMPTY;
+
+        long durationMs = -1;
+        long[] mvhd = child(ch, moov[0], moov[1], "mvhd");
+        if (mvhd != null) {
+            ByteBuffer b = readAt(ch, mvhd[0], 32);
+            if (b.limit() >= 32) {
+                boolean v1 = b.get(0) == 1;
+                long timescale = Integer.toUnsignedLong(b.getInt(v1 ? 20 : 12));
+                long duration = v1 ? b.getLong(24) : Integer.toUnsignedLong(b.getInt(16));
+                if (timescale > 0) durationMs = duration * 1000 / timescale;
+            }
+        }
+
+        String title = null, artist = null, album = null, albumArtist = null;
+        long artOffset = -1;
+        int artLength = -1, trackNo = -1;
+
+        long[] udta = child(ch, moov[0], moov[1], "udta");
+        long[] meta = (udta != null) ? child(ch, udta[0], udta[1], "meta") : null;
+        long[] ilst = (meta != null) ? child(ch, meta[0] + 4, meta[1], "ilst") : null; // meta is a full box
+        if (ilst != null) {
+            long pos = ilst[0];
+            while (pos + 8 <= ilst[1]) {
+                long[] item = atomAt(ch, pos, ilst[1]);
+                if (item == null) break;
+                String type = ascii(readAt(ch, pos + 4, 4), 0, 4);
+                long[] data = child(ch, item[0], item[1], "data");
+                if (data != null && data[1] - data[0] > 8) {
+                    long valueStart = data[0] + 8; // type indicator + locale
+                    int valueLen = (int) Math.min(data[1] - valueStart, Integer.MAX_VALUE);
+                    switch (type) {
+                        case "\u00A9nam" -> title = mp4Text(ch, valueStart, valueLen);
+                        case "\u00A9ART" -> artist = mp4Text(ch, valueStart, valueLen);
+                        case "aART" -> albumArtist = mp4Text(ch, valueStart, valueLen);
+                        case "\u00A9alb" -> album = mp4Text(ch, valueStart, valueLen);
+                        case "trkn" -> { // binary: 2 pad bytes, u16 track, u16 total
+                            ByteBuffer b = readAt(ch, valueStart, 4);
+                            if (b.limit() == 4 && b.getShort(2) > 0) trackNo = b.getShort(2);
+                        }
+                        case "covr" -> {
+                            artOffset = valueStart;
+                            artLength = valueLen;
+                        }
+                        default -> { }
+                    }
+                }
+                pos = item[1];
+            }
+        }
+        if (artist == null) artist = albumArtist;
+        return new TrackInfo(title, artist, album, trackNo, durationMs, artOffset, artLength);
+    }
+
+    private static String mp4Text(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = readAt(ch, pos, Math.min(len, MAX_TEXT));
+        byte[] raw = new byte[b.remaining()];
+        b.get(raw);
+        return clean(new String(raw, StandardCharsets.UTF_8));
+    }
+
+    // Finds the first child atom of the given type in [from, to);
+    // returns {payloadStart, payloadEnd} or null.
+    private static long[] child(FileChannel ch, long from, long to, String type) throws IOException {
+        long pos = from;
+        while (pos + 8 <= to) {
+            long[] a = atomAt(ch, pos, to);
+            if (a == null) return null;
+            if (ascii(readAt(ch, pos + 4, 4), 0, 4).equals(type)) return a;
+            pos = a[1];
+        }
+        return null;
+    }
+
+    private static long[] atomAt(FileChannel ch, long pos, long to) throws IOException {
+        ByteBuffer h = readAt(ch, pos, 16);
+        if (h.limit() < 8) return null;
+        long size = Integer.toUnsignedLong(h.getInt(0));
+        long header = 8;
+        if (size == 1) { // 64-bit size follows the type
+            if (h.limit() < 16) return null;
+            size = h.getLong(8);
+            header = 16;
+        } else if (size == 0) { // runs to the end of the parent
+            size = to - pos;
+        }
+        if (size < header || pos + size > to) return null;
+        return new long[] { pos + header, pos + size };
+    }
+
+    // ---------------- RIFF / WAVE ----------------
+
+    private static TrackInfo readWav(FileChannel ch) throws IOException {
+        long size = ch.size();
+        long pos = 12;
+        long byteRate = -1, dataLen = -1;
+        String title = null, artist = null, album = null;
+        int trackNo = -1;
+
+        while (pos + 8 <= size) {
+            ByteBuffer h = readAt(ch, pos, 8).order(ByteOrder.LITTLE_ENDIAN);
+            String id = ascii(h, 0, 4);
+            long len = Integer.toUnsignedLong(h.getInt(4));
+            long body = pos + 8;
+
+            switch (id) {
+                case "fmt " -> byteRate = Integer.toUnsignedLong(
+                        readAt(ch, body, 12).order(ByteOrder.LITTLE_ENDIAN).getInt(8));
+                case "data" -> dataLen = Math.min(len, size - body); // streamed files may say 0xFFFFFFFF
+                case "LIST" -> {
+                    ByteBuffer list = readAt(ch, body, (int) Math.min(len, 64 * 1024)).order(ByteOrder.LITTLE_ENDIAN);
+                    if (list.limit() >= 4 && ascii(list, 0, 4).equals("INFO")) {
+                        int i = 4;
+                        while (i + 8 <= list.limit()) {
+                            String sub = ascii(list, i, 4);
+                            int subLen = list.getInt(i + 4);
+                            if (subLen < 0 || i + 8 + subLen > list.limit()) break;
+                            String value = clean(new String(list.array(), i + 8, Math.min(subLen, MAX_TEXT), StandardCharsets.ISO_8859_1));
+                            switch (sub) {
+                                case "INAM" -> title = value;
+                                case "IART" -> artist = value;
+                                case "IPRD" -> album = value;
+                                case "ITRK", "IPRT" -> trackNo = trackNumber(value);
+                                default -> { }
+                            }
+                            i += 8 + subLen + (subLen & 1);
+                        }
+                    }
+                }
+                default -> { }
+            }
+            if (id.equals("data") && byteRate > 0 && title != null) break; // nothing more we need
+            pos = body + len + (len & 1); // chunks are word aligned
+        }
+
+        long durationMs = (byteRate > 0 && dataLen >= 0) ? dataLen * 1000 / byteRate : -1;
+        return new TrackInfo(title, artist, album, trackNo, durationMs, -1, -1);
+    }
+
+    // ---------------- helpers ----------------
+
+    // Up to len bytes from pos (fewer at EOF); position 0, limit = bytes read
+    static ByteBuffer readAt(FileChannel ch, long pos, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(Math.max(0, len));
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos + b.position());
+            if (n < 0) break;
+        }
+        return b.flip();
+    }
+
+    private static String ascii(ByteBuffer b, int off, int len) {
+        if (off + len > b.limit()) return "";
+        char[] c = new char[len];
+        for (int i = 0; i < len; i++) c[i] = (char) (b.get(off + i) & 0xFF);
+        return new String(c);
+    }
+
+    private static int syncsafe(ByteBuffer b, int off) {
+        return ((b.get(off) & 0x7F) << 21) | ((b.get(off + 1) & 0x7F) << 14)
+                | ((b.get(off + 2) & 0x7F) << 7) | (b.get(off + 3) & 0x7F);
+    }
+
+    private static int u24(ByteBuffer b, int off) {
+        return ((b.get(off) & 0xFF) << 16) | ((b.get(off + 1) & 0xFF) << 8) | (b.get(off + 2) & 0xFF);
+    }
+
+    // First value of a possibly \0-separated list, trimmed; null if empty
+    private static String clean(String s) {
+        int nul = s.indexOf('\0');
+        if (nul >= 0) s = s.substring(0, nul);
+        s = s.strip();
+        return s.isEmpty() ? null : s;
+    }
+
+    // "3", "03" or "3/12" -> 3; anything else -> -1
+    private static int trackNumber(String s) {
+        if (s == null) return -1;
+        int slash = s.indexOf('/');
+        long n = parseLong((slash >= 0 ? s.substring(0, slash) : s).trim());
+        return (n > 0 && n < 100_000) ? (int) n : -1;
+    }
+
+    private static long parseLong(String s) {
+        if (s == null) return -1;
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package player;
+
+import java.util.Arrays;
+
+// Finds beat onsets and the tempo in a stream of audio spectra (dB per band,
+// as MediaPlayer's spectrum listener reports them). All state is in arrays
+// allocated up front, so process() allocates nothing; it runs on every
+// spectrum callback during playback.
+//
+//   onset: spectral flux (how much louder each band got since the last
+//          spectrum, low bands counted double) above mean + SENSITIVITY * stddev
+//          of the recent flux, at most one per MIN_GAP
+//   tempo: every onset votes for 60 / (time since each of the last ONSETS
+//          onsets), folded into one octave; votes decay, the heaviest
+//          few neighbouring bins win
+final class OnsetDetector {
+    private static final int HISTORY = 50;        // flux values the threshold looks at
+    private static final float SENSITIVITY = 1.5f;
+    private static final float MIN_FLUX = 1f;     // dB; below this it's silence or noise
+    private static final double MIN_GAP = 0.2;    // s between onsets (300 BPM)
+    private static final double MAX_INTERVAL = 2.0;
+    private static final int ONSETS = 12;
+    private static final int MIN_BPM = 80;        // tempos are folded into one octave, [80, 160),
+                                                  // so double / half time vote for the same bin
+    private static final float DECAY = 0.98f;     // per onset
+    private static final float MIN_VOTES = 3f;    // before a tempo is reported
+    private static final int SPREAD = 3;          // bins
+
+    private final float floorDb;
+    private final float[] prev;
+    private final float[] flux = new float[HISTORY];
+    private int fluxAt = 0, fluxCount = 0;
+    private final double[] onsets = new double[ONSETS];
+    private int onsetAt = 0, onsetCount = 0;
+    private final float[] votes = new float[MIN_BPM];
+    private double lastOnset = Double.NEGATIVE_INFINITY;
+    private double bpm = 0;
+
+    // bands: spectrum size; floorDb: the spectrum threshold (quieter bands read as this)
+    OnsetDetector(int bands, float floorDb) {
+        this.floorDb = floorDb;
+        this.prev = new float[bands];
+    }
+
+    // One spectrum at time (seconds into the track). True if an onset starts here.
+    boolean process(double time, float[] db) {
+        int n = Math.min(db.length, prev.length);
+        int low = Math.max(1, n / 16); // the lowest ~1.4 kHz carries the beat
+        float f = 0;
+        for (int i = 0; i < n; i++) {
+            float m = Math.max(0f, db[i] - floorDb);
+            float rise = m - prev[i];
+            if (rise > 0) f += (i < low) ? 2 * rise : rise;
+            prev[i] = m;
+        }
+
+        boolean onset = false;
+        if (fluxCount >= HISTORY / 2 && f > MIN_FLUX && time - lastOnset >= MIN_GAP) {
+            float mean = 0;
+            for (int i = 0; i < fluxCount; i++) mean += flux[i];
+            mean /= fluxCount;
+            float var = 0;
+            for (int i = 0; i < fluxCount; i++) var += (flux[i] - mean) * (flux[i] - mean);
+            onset = f > mean + SENSITIVITY * (float) Math.sqrt(var / fluxCount);
+        }
+        flux[fluxAt] = f;
+        fluxAt = (fluxAt + 1) % HISTORY;
+        fluxCount = Math.min(fluxCount + 1, HISTORY);
+
+        if (onset) {
+            vote(time);
+            lastOnset = time;
+        }
+        return onset;
+    }
+
+    // Beats per minute, 0 until there's enough to go on
+    double bpm() {
+        return bpm;
+    }
+
+    // A new track: forget everything
+    void reset() {
+        Arrays.fill(prev, 0f);
+        Arrays.fill(votes, 0f);
+        fluxAt = fluxCount = onsetAt = onsetCount = 0;
+        lastOnset = Double.NEGATIVE_INFINITY;
+        bpm = 0;
+    }
+
+    private void vote(double time) {
+        for (int i = 0; i < votes.length; i++) votes[i] *= DECAY;
+        for (int k = 1; k <= onsetCount; k++) {
+            double interval = time - onsets[(onsetAt - k + ONSETS) % ONSETS];
+            if (interval > MAX_INTERVAL) break;
+            double b = 60 / interval;
+            while (b < MIN_BPM) b *= 2;
+            while (b >= 2 * MIN_BPM) b /= 2;
+            // split between the two nearest bins; nearer onsets count more
+            double x = b - MIN_BPM;
+            int lo = (int) x;
+            float w = 1f / k, frac = (float) (x - lo);
+            votes[lo] += w * (1 - frac);
+            if (lo + 1 < votes.length) votes[lo + 1] += w * frac;
+        }
+        onsets[onsetAt] = time;
+        onsetAt = (onsetAt + 1) % ONSETS;
+        onsetCount = Math.min(onsetCount + 1, ONSETS);
+
+        // the heaviest window of +-SPREAD bins, then its centre: the 20 ms
+        // spectrum steps split one tempo between neighbouring bins
+        int best = 0;
+        float bestSum = -1;
+        for (int i = 0; i < votes.length; i++) {
+            float sum = 0;
+            for (int j = Math.max(0, i - SPREAD); j <= Math.min(votes.length - 1, i + SPREAD); j++) sum += votes[j];
+            if (sum > bestSum) {
+                bestSum = sum;
+                best = i;
+            }
+        }
+        if (bestSum < MIN_VOTES) return;
+        double centre = 0;
+        for (int j = Math.max(0, best - SPREAD); j <= Math.min(votes.length - 1, best + SPREAD); j++) centre += j * votes[j];
+        bpm = MIN_BPM + centre / bestSum;
+    }
+}
@@ -0,0 +1,129 @@
+package player;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Fixed-size byte ring between HeadlessEngine's decode thread (the only
+// writer) and its output thread (the only reader). No lock: each side owns one
+// counter and publishes it with a volatile write. A side with nothing to do
+// parks, and the other side unparks it.
+//
+// Refill goes by watermark: once the ring is full the writer sleeps until the
+// reader has drained it down to lowWater, then tops it up in one go, instead
+// of waking for every chunk the reader takes.
+final class PcmRing {
+    private final byte[] buf;
+    private final int lowWater;
+    private final LongAdder underruns; // the engine's
+    private volatile long written = 0; // bytes ever written (writer only) / read (reader only); index = count % length
+    private volatile long read = 0;
+    private volatile boolean finished = false; // no more writes; the reader drains what's left
+    private volatile boolean closed = false;   // abandoned; both sides return right away
+    private volatile Thread parkedWriter;
+    private volatile Thread parkedReader;
+    private volatile boolean filled = false;   // was full once: from then on the lowest fill means something
+    private volatile long lowest;              // reader only
+
+    // lowWater: bytes left in the ring when the writer refills it
+    PcmRing(int capacity, int lowWater, LongAdder underruns) {
+        this.buf = new byte[capacity];
+        this.lowWater = Math.max(0, Math.min(lowWater, capacity - 1));
+        this.underruns = underruns;
+        this.lowest = capacity;
+    }
+
+    // Copies all of b[off, off + len) in, waiting for room. False if closed.
+    boolean write(byte[] b, int off, int len) throws InterruptedException {
+        while (len > 0) {
+            if (closed) return false;
+            long w = written;
+            int free = buf.length - (int) (w - read);
+            if (free == 0) {
+                filled = true;
+                awaitDrained();
+                continue;
+            }
+            int n = Math.min(len, free);
+            int at = (int) (w % buf.length);
+            int first = Math.min(n, buf.length - at);
+            System.arraycopy(b, off, buf, at, first);
+            System.arraycopy(b, off + first, buf, 0, n - first);
+            written = w + n; // publishes the bytes
+            unpark(parkedReader);
+            off += n;
+            len -= n;
+        }
+        return true;
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        parkedWriter = Thread.currentThread();
+        try {
+            while (!closed && written - read > lowWater) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            parkedWriter = null;
+        }
+    }
+
+    // Up to len bytes, waiting for at least one; -1 once finished and empty (or
+    // closed). Finding it empty mid-stream counts as an underrun.
+    int read(byte[] b, int off, int len) throws InterruptedException {
+        long r = read;
+        long w = written;
+        if (w == r) {
+            if (r > 0 && !finished && !closed) underruns.increment(); // the decoder fell behind
+            parkedReader = Thread.currentThread();
+            try {
+                while (!closed && !finished && written == r) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) throw new InterruptedException();
+                }
+            } finally {
+                parkedReader = null;
+            }
+            w = written; // again: finish() comes after the last write
+        }
+        if (closed || w == r) return -1;
+        if (filled && w - r < lowest) lowest = w - r;
+        int n = (int) Math.min(len, w - r);
+        int at = (int) (r % buf.length);
+        int first = Math.min(n, buf.length - at);
+        System.arraycopy(buf, at, b, off, first);
+        System.arraycopy(buf, 0, b, off + first, n - first);
+        read = r + n;
+        if (w - read <= lowWater) unpark(parkedWriter);
+        return n;
+    }
+
+    private static void unpark(Thread t) {
+        if (t != null) LockSupport.unpark(t);
+    }
+
+    // Bytes written so far: where the next write will start in the stream
+    long written() {
+        return written;
+    }
+
+    // 0..1, now and at its lowest since the ring first filled up (1 before that)
+    double fill() {
+        return (written - read) / (double) buf.length;
+    }
+
+    double lowestFill() {
+        return lowest / (double) buf.length;
+    }
+
+    void finish() {
+        finished = true;
+        unpark(parkedReader);
+    }
+
+    void close() {
+        closed = true;
+        unpark(parkedReader);
+        unpark(parkedWriter);
+    }
+}
@@ -0,0 +1,352 @@
+package player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+// Up next: tracks picked to play before the playlist carries on ("play next",
+// "add to queue"). Playlist.next() takes from here first.
+//
+// Laid out as  head buffer + implicit treap + tail buffer:
+//   - the ends are small arrays, so addFirst / addLast / poll are O(1); a full
+//     buffer moves CHUNK items into the treap in one go (O(CHUNK + log n)), and
+//     an empty head refills from the treap the same way
+//   - the treap is keyed by position (subtree sizes), so insert / remove / get
+//     anywhere are O(log n) instead of an ArrayList's O(n) shift
+// Treap nodes are slots of parallel int arrays, slot 0 being the empty tree,
+// with freed slots reused. Synchronized; callable from the FX thread and the CLI.
+final class PlayQueue {
+    private static final int CHUNK = 64;
+    private static final int HISTORY = 200;
+
+    // First items, reversed: head[headN - 1] is the front of the queue
+    private Track[] head = new Track[2 * CHUNK];
+    private int headN = 0;
+
+    // Last items, in order
+    private Track[] tail = new Track[2 * CHUNK];
+    private int tailN = 0;
+
+    // Treap (everything between head and tail)
+    private Track[] val = new Track[64];
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private int[] cnt = new int[64];  // subtree size
+    private int[] prio = new int[64]; // max-heap
+    private int nodes = 1;            // slot 0 is nil
+    private int free = 0;             // freed slots, chained through left[]
+    private int root = 0;
+    private int seed = 0x9E3779B9;
+    private int splitL, splitR;       // results of split()
+
+    // What poll() handed out, most recent last (see back())
+    private final ArrayDeque<Track> played = new ArrayDeque<>();
+
+    synchronized int size() {
+        return headN + cnt[root] + tailN;
+    }
+
+    synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // ---------------- Ends ----------------
+
+    // "Play next"
+    synchronized void addFirst(Track t) {
+        Objects.requireNonNull(t);
+        if (headN == head.length) flushHead();
+        head[headN++] = t;
+    }
+
+    // "Add to queue"
+    synchronized void addLast(Track t) {
+        Objects.requireNonNull(t);
+        if (tailN == tail.length) flushTail();
+        tail[tailN++] = t;
+    }
+
+    synchronized Track peekFirst() {
+        if (headN > 0) return head[headN - 1];
+        if (root != 0) {
+            int n = root;
+            while (left[n] != 0) n = left[n];
+            return val[n];
+        }
+        return (tailN > 0) ? tail[0] : null;
+    }
+
+    // Takes the front track (null if empty) and remembers it as played
+    synchronized Track poll() {
+        if (size() == 0) return null;
+        if (headN == 0) refillHead();
+        Track t = head[--headN];
+        head[headN] = null;
+        played.addLast(t);
+        if (played.size() > HISTORY) played.pollFirst();
+        return t;
+    }
+
+    // ---------------- History ----------------
+
+    // Going back from the last polled track: it goes back to the front of the
+    // queue, and the queued track that played before it (if the one before was
+    // from the queue at all) is returned as the one playing again.
+    synchronized Track back() {
+        Track cur = played.pollLast();
+        if (cur != null) addFirst(cur);
+        return played.peekLast();
+    }
+
+    // What back() would return
+    synchronized Track peekBack() {
+        Iterator<Track> it = played.descendingIterator();
+        if (!it.hasNext()) return null;
+        it.next();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    // The playlist took over again; back() no longer leads into the queue
+    synchronized void forgetPlayed() {
+        played.clear();
+    }
+
+    // ---------------- Positions ----------------
+
+    synchronized Track get(int pos) {
+        Objects.checkIndex(pos, size());
+        if (pos < headN) return head[headN - 1 - pos];
+        int k = pos - headN;
+        if (k < cnt[root]) return val[nth(k)];
+        return tail[k - cnt[root]];
+    }
+
+    // Inserts t so it ends up at pos (0 = play next, size() = last)
+    synchronized void insert(int pos, Track t) {
+        Objects.requireNonNull(t);
+        Objects.checkIndex(pos, size() + 1);
+        if (pos == 0) { addFirst(t); return; }
+        if (pos == size()) { addLast(t); return; }
+        if (headN == head.length) flushHead();
+        if (tailN == tail.length) flushTail();
+
+        int mid = cnt[root];
+        if (pos <= headN) {
+            int i = headN - pos;
+            System.arraycopy(head, i, head, i + 1, pos);
+            head[i] = t;
+            headN++;
+        } else if (pos <= headN + mid) {
+            split(root, pos - headN);
+            int l = splitL, r = splitR;
+            root = merge(merge(l, alloc(t)), r);
+        } else {
+            int i = pos - headN - mid;
+            System.arraycopy(tail, i, tail, i + 1, tailN - i);
+            tail[i] = t;
+            tailN++;
+        }
+    }
+
+    synchronized Track remove(int pos) {
+        Objects.checkIndex(pos, size());
+        Track t;
+        int mid = cnt[root];
+        if (pos < headN) {
+            int i = headN - 1 - pos;
+            t = head[i];
+            System.arraycopy(head, i + 1, head, i, headN - 1 - i);
+            head[--headN] = null;
+        } else if (pos < headN + mid) {
+            split(root, pos - headN);
+            int l = splitL;
+            split(splitR, 1);
+            int n = splitL, r = splitR;
+            root = merge(l, r);
+            t = val[n];
+            release(n);
+        } else {
+            int i = pos - headN - mid;
+            t = tail[i];
+            System.arraycopy(tail, i + 1, tail, i, tailN - 1 - i);
+            tail[--tailN] = null;
+        }
+        return t;
+    }
+
+    // Reorders: the track at from ends up at to
+    synchronized void move(int from, int to) {
+        Objects.checkIndex(from, size());
+        Objects.checkIndex(to, size());
+        if (from != to) insert(to, remove(from));
+    }
+
+    synchronized void clear() {
+        Arrays.fill(head, 0, headN, null);
+        Arrays.fill(tail, 0, tailN, null);
+        Arrays.fill(val, 0, nodes, null);
+        headN = tailN = 0;
+        nodes = 1;
+        free = 0;
+        root = 0;
+    }
+
+    // Tracks at [from, from + n), clipped to the queue
+    synchronized List<Track> list(int from, int n) {
+        int to = Math.min(size(), from + Math.max(n, 0));
+        List<Track> out = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = Math.max(from, 0); i < to; i++) out.add(get(i));
+        return out;
+    }
+
+    // ---------------- Buffers <-> treap ----------------
+
+    // The CHUNK head items next to the treap (head[0, CHUNK), reversed) join its front
+    private void flushHead() {
+        root = merge(build(head, 0, CHUNK, true), root);
+        System.arraycopy(head, CHUNK, head, 0, headN - CHUNK);
+        Arrays.fill(head, headN - CHUNK, headN, null);
+        headN -= CHUNK;
+    }
+
+    // The first CHUNK tail items join the treap's end
+    private void flushTail() {
+        root = merge(root, build(tail, 0, CHUNK, false));
+        System.arraycopy(tail, CHUNK, tail, 0, tailN - CHUNK);
+        Arrays.fill(tail, tailN - CHUNK, tailN, null);
+        tailN -= CHUNK;
+    }
+
+    // Head is empty: take the next CHUNK from the treap, or else the whole tail
+    private void refillHead() {
+        if (root != 0) {
+            split(root, Math.min(CHUNK, cnt[root]));
+            int taken = splitL;
+            root = splitR;
+            headN = cnt[taken];
+            drain(taken, headN - 1);
+        } else {
+            for (int i = 0; i < tailN; i++) head[i] = tail[tailN - 1 - i];
+            Arrays.fill(tail, 0, tailN, null);
+            headN = tailN;
+            tailN = 0;
+        }
+    }
+
+    // Writes subtree n in order into head, from index at downwards, freeing its slots.
+    // Returns the next free index.
+    private int drain(int n, int at) {
+        if (n == 0) return at;
+        at = drain(left[n], at);
+        head[at--] = val[n];
+        int r = right[n];
+        release(n);
+        return drain(r, at);
+    }
+
+    // ---------------- Treap ----------------
+
+    // A treap of a[from, to) (in reverse if reversed) in O(to - from): the
+    // usual stack-built Cartesian tree over random priorities
+    private int build(Track[] a, int from, int to, boolean reversed) {
+        int[] stack = new int[to - from];
+        int sp = 0;
+        for (int i = from; i < to; i++) {
+            int n = alloc(reversed ? a[to - 1 - (i - from)] : a[i]);
+            int last = 0;
+            while (sp > 0 && prio[stack[sp - 1]] < prio[n]) pull(last = stack[--sp]);
+            left[n] = last;
+            if (sp > 0) right[stack[sp - 1]] = n;
+            stack[sp++] = n;
+        }
+        int top = (sp > 0) ? stack[0] : 0;
+        while (sp > 0) pull(stack[--sp]);
+        return top;
+    }
+
+    private int merge(int a, int b) {
+        if (a == 0) return b;
+        if (b == 0) return a;
+        if (prio[a] > prio[b]) {
+            right[a] = merge(right[a], b);
+            pull(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        pull(b);
+        return b;
+    }
+
+    // First k items of t into splitL, the rest into splitR
+    private void split(int t, int k) {
+        if (t == 0) {
+            splitL = splitR = 0;
+            return;
+        }
+        if (cnt[left[t]] < k) {
+            split(right[t], k - cnt[left[t]] - 1);
+            right[t] = splitL;
+            pull(t);
+            splitL = t;
+        } else {
+            split(left[t], k);
+            left[t] = splitR;
+            pull(t);
+            splitR = t;
+        }
+    }
+
+    private int nth(int k) {
+        int n = root;
+        while (true) {
+            int l = cnt[left[n]];
+            if (k < l) {
+                n = left[n];
+            } else if (k == l) {
+                return n;
+            } else {
+                k -= l + 1;
+                n = right[n];
+            }
+        }
+    }
+
+    private void pull(int n) {
+        cnt[n] = cnt[left[n]] + cnt[right[n]] + 1;
+    }
+
+    private int alloc(Track t) {
+        int n;
+        if (free != 0) {
+            n = free;
+            free = left[n];
+        } else {
+            if (nodes == val.length) {
+                int cap = nodes * 2;
+                val = Arrays.copyOf(val, cap);
+                left = Arrays.copyOf(left, cap);
+                right = Arrays.copyOf(right, cap);
+                cnt = Arrays.copyOf(cnt, cap);
+                prio = Arrays.copyOf(prio, cap);
+            }
+            n = nodes++;
+        }
+        seed ^= seed << 13; // xorshift
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        val[n] = t;
+        left[n] = right[n] = 0;
+        cnt[n] = 1;
+        prio[n] = seed;
+        return n;
+    }
+
+    private void release(int n) {
+        val[n] = null;
+        left[n] = free;
+        free = n;
+    }
+}
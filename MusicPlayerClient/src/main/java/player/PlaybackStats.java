@@ -0,0 +1,39 @@
+package player;
+
+// What an engine measured about its own playback, for tuning buffer sizes
+// (see AudioEngine.stats and the "stats" command). Counters run from the
+// engine's start; fill levels are the current track's. NaN / 0: not measured
+// (no ring for memory-mapped WAV or JavaFX Media, no decoder timing there).
+//   underruns      the output side found nothing to play mid-track (ring empty, media stalled)
+//   lineUnderruns  the sound line had run dry by the time the next slice came
+//   decode...      time per decoded chunk, against chunkMs of audio in one
+record PlaybackStats(long underruns, long lineUnderruns, long errors,
+                     int bufferMs, int refillPercent, int lineMs,
+                     double fill, double lowestFill,
+                     long chunks, double decodeAvgMs, double decodeMaxMs, double chunkMs) {
+
+    static PlaybackStats media(long stalls, long errors) {
+        return new PlaybackStats(stalls, 0, errors, 0, 0, 0, Double.NaN, Double.NaN, 0, 0, 0, 0);
+    }
+
+    // Adds JavaFX Media's counts to a HeadlessEngine's
+    PlaybackStats plus(long stalls, long moreErrors) {
+        return new PlaybackStats(underruns + stalls, lineUnderruns, errors + moreErrors, bufferMs, refillPercent, lineMs,
+                fill, lowestFill, chunks, decodeAvgMs, decodeMaxMs, chunkMs);
+    }
+
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("underruns       %d\n", underruns));
+        sb.append(String.format("line underruns  %d\n", lineUnderruns));
+        sb.append(String.format("errors          %d", errors));
+        if (bufferMs > 0)
+            sb.append(String.format("\nbuffer          %d ms, refill below %d%%, line %d ms", bufferMs, refillPercent, lineMs));
+        if (!Double.isNaN(fill))
+            sb.append(String.format("\nfill            %.0f%% now, %.0f%% at the lowest", fill * 100, lowestFill * 100));
+        if (chunks > 0)
+            sb.append(String.format("\ndecode          %d chunks, %.2f ms avg, %.2f ms max (%.1f ms of audio each)",
+                    chunks, decodeAvgMs, decodeMaxMs, chunkMs));
+        return sb.toString();
+    }
+}
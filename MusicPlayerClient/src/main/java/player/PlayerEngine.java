@@ -1,103 +1,487 @@
 package player;
 
 import javafx.application.Platform;
+import javafx.scene.media.AudioSpectrumListener;
 import javafx.scene.media.Media;
 import javafx.scene.media.MediaPlayer;
 import javafx.util.Duration;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Every command has an ...Async form that returns right away; commands are
+// queued and run on the FX thread (see CommandQueue). The plain methods are
+// thin blocking wrappers kept for the CLI (see AudioEngine).
+//
+// Nothing starts or stops dead: every player is a Fader voice, faded out on
+// pause / stop / track change and back in on resume, and volume changes glide.
+// With a crossfade set, the next track starts that long before the current
+// one ends (or on a manual change) and the two overlap on equal-power curves.
+public class PlayerEngine implements AudioEngine {
+    // How long before the end of a track the next one is opened in gapless mode
+    // (at least; a crossfade needs it earlier)
+    private static final double PRELOAD_SECONDS = 8.0;
+
+    private static final double CHANGE_FADE = 0.03; // a track change without crossfade: just no click
+    private static final double PAUSE_FADE = 0.2;   // pause, resume, stop
+    private static final double VOLUME_GLIDE = 0.08;
+
+    // Spectrum for beat detection: 50 analyses a second is fine enough to place
+    // a beat within a frame of the dancer; 64 bands (~340 Hz each) keep the kick
+    // in the lowest few
+    private static final double SPECTRUM_INTERVAL = 0.02;
+    private static final int SPECTRUM_BANDS = 64;
+    private static final int SPECTRUM_FLOOR_DB = -60;
 
-public class PlayerEngine {
     private MediaPlayer player;
     private boolean paused = false;
+    private double volume = 1.0;
+    private double crossfade = Math.max(0, Math.min(MAX_CROSSFADE, Integer.getInteger("player.crossfade", 0)));
+
+    // FX thread. The fader is made on first use (its timer needs the toolkit);
+    // voice is the current track's, players fading out have their own.
+    private Fader fader;
+    private Fader.Voice voice;
 
     // Called by MediaPlayer when track ends
     private Runnable onEnd = null;
 
+    // Gapless mode: the next track is opened in a second MediaPlayer while the
+    // current one is still playing, and started straight from setOnEndOfMedia.
+    private boolean gapless = false;
+    private Supplier<Track> upcoming;   // asked once per track, shortly before it ends
+    private Consumer<Track> onAdvance;  // told when a pre-rolled track took over
+    private MediaPlayer nextPlayer;
+    private Track nextTrack;
+
+    private volatile PositionListener positionListener;
+
+    // Media has no buffer of ours to watch, but it says when it stalls
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    // Beat analysis (FX thread): one listener object for every player, so
+    // nothing is allocated per callback
+    private BeatListener beatListener;
+    private final OnsetDetector onsets = new OnsetDetector(SPECTRUM_BANDS, SPECTRUM_FLOOR_DB);
+    private final AudioSpectrumListener spectrum = this::onSpectrum;
+
+    // WAV goes through a HeadlessEngine instead (memory-mapped, see WavFile):
+    // Media opens it through its URL pipeline and seeks slowly in big masters.
+    // Made on the first WAV, and again after one fades out while the next plays;
+    // they share metrics. WAVs get no beat analysis, and crossfade into the next
+    // track only on a manual change (the end of one is gapless instead).
+    // -Dplayer.mappedWav=false leaves WAV to Media (EngineBench compares backends on one).
+    private final boolean mappedWav = !"false".equals(System.getProperty("player.mappedWav"));
+    private HeadlessEngine wavEngine;
+    private HeadlessEngine.Metrics wavMetrics;
+    private boolean wav = false; // the current track is wavEngine's
+
+    private final CommandQueue commands = new CommandQueue();
+
+    @Override
     public void setOnEnd(Runnable onEnd) {
         this.onEnd = onEnd;
     }
 
-    public void play(Track track) {
-        if (track == null) return;
+    // Both callbacks run on the FX thread
+    @Override
+    public void setGapless(boolean on, Supplier<Track> upcoming, Consumer<Track> onAdvance) {
+        this.upcoming = upcoming;
+        this.onAdvance = onAdvance;
+        await(commands.submit(CommandQueue.Kind.OTHER, () -> {
+            gapless = on;
+            if (!on) disposeNext();
+            if (wavEngine != null) gaplessWav(wavEngine);
+        }));
+    }
 
-        fx(() -> {
-            disposeCurrent();
+    @Override
+    public void invalidateUpcoming() {
+        commands.submit(CommandQueue.Kind.OTHER, this::disposeNext);
+    }
 
-            Media media = new Media(track.path().toUri().toString());
-            player = new MediaPlayer(media);
+    // ---------------- Async API ----------------
 
-            player.setOnEndOfMedia(() -> {
-                if (onEnd != null) onEnd.run();
-            });
-            player.setOnError(() -> System.out.println("Playback error: " + player.getError()));
+    public CompletableFuture<Void> playAsync(Track track) {
+        if (track == null) return CompletableFuture.completedFuture(null);
 
-            paused = false;
-            player.play();
+        return commands.submit(CommandQueue.Kind.OTHER, () -> {
+            disposeNext();
+            boolean overlap = crossfade > 0 && voice != null && voice.level() > 0 && !paused;
+            fadeOutCurrent(overlap ? crossfade : CHANGE_FADE);
+            begin(track, null, overlap ? crossfade : 0);
         });
     }
 
-    public void pause() {
-        fx(() -> {
-            if (player == null) return;
-            player.pause();
+    public CompletableFuture<Void> pauseAsync() {
+        return commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (voice == null || paused) return;
+            voice.rampTo(0, PAUSE_FADE, wav ? wavEngine::pause : player::pause);
             paused = true;
         });
     }
 
-    public void resume() {
-        fx(() -> {
-            if (player == null) return;
-            player.play();
+    public CompletableFuture<Void> resumeAsync() {
+        return commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (voice == null) return;
+            if (wav) wavEngine.resume();
+            else player.play();
+            voice.rampTo(1, PAUSE_FADE, null); // a pause still fading out never happens
             paused = false;
         });
     }
 
-    public void stop() {
-        fx(() -> {
-            if (player == null) return;
-            player.stop();
+    public CompletableFuture<Void> stopAsync() {
+        return commands.submit(CommandQueue.Kind.OTHER, () -> {
+            disposeNext();
+            if (voice == null) return;
+            // resume() starts it over, like MediaPlayer
+            voice.rampTo(0, paused ? 0 : PAUSE_FADE, wav ? wavEngine::stop : player::stop);
             paused = false;
         });
     }
 
-    public void seekSeconds(int seconds) {
-        fx(() -> {
-            if (player == null) return;
-            player.seek(Duration.seconds(Math.max(0, seconds)));
+    // Back-to-back seeks collapse into the last one
+    public CompletableFuture<Void> seekAsync(double seconds) {
+        double sec = Math.max(0, seconds);
+        return commands.submit(CommandQueue.Kind.SEEK, () -> {
+            if (wav) wavEngine.seekSeconds(sec);
+            else if (player != null) player.seek(Duration.seconds(sec));
         });
     }
 
-    public void setVolume(double v) {
+    // Back-to-back volume changes collapse into the last one, which glides there
+    public CompletableFuture<Void> setVolumeAsync(double v) {
         double vol = Math.max(0.0, Math.min(1.0, v));
-        fx(() -> {
-            if (player == null) return;
-            player.setVolume(vol);
+        return commands.submit(CommandQueue.Kind.VOLUME, () -> {
+            volume = vol; // kept for the next tracks too
+            fader().setMaster(vol, VOLUME_GLIDE);
         });
     }
 
-    public void printNowPlaying(String labelPrefix, Track track) {
-        fx(() -> {
-            if (player == null || track == null) {
-                System.out.println("Nothing playing.");
-                return;
-            }
+    // "<prefix><name>  m:ss / m:ss", or "Nothing playing."
+    public CompletableFuture<String> nowPlayingAsync(String labelPrefix, Track track) {
+        return commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (wav) return wavEngine.nowPlaying(labelPrefix, track);
+            if (player == null || track == null) return "Nothing playing.";
             Duration t = player.getCurrentTime();
             Duration d = player.getTotalDuration();
-            System.out.println(labelPrefix + track.displayName()
+            return labelPrefix + track.displayName()
                     + "  " + fmt(t) + " / " + fmt(d)
-                    + (paused ? " (paused)" : ""));
+                    + (paused ? " (paused)" : "");
+        });
+    }
+
+    // ---------------- Blocking API ----------------
+
+    @Override
+    public void play(Track track) {
+        await(playAsync(track));
+    }
+
+    private MediaPlayer open(Track track) {
+        Media media = new Media(track.path().toUri().toString());
+        MediaPlayer p = new MediaPlayer(media);
+
+        if (beatListener != null) analyse(p, true);
+        p.setOnEndOfMedia(() -> onEndOfMedia(p));
+        p.setOnError(() -> {
+            errors.increment();
+            System.out.println("Playback error: " + p.getError());
+        });
+        p.setOnStalled(stalls::increment);
+        p.currentTimeProperty().addListener((obs, oldT, t) -> {
+            if (p == player) publish(t);
+            maybePreload(p, t);
+            maybeCrossfade(p, t);
         });
+        return p;
+    }
+
+    private Fader fader() {
+        if (fader == null) fader = new Fader(volume);
+        return fader;
+    }
+
+    // Makes track the current one and starts it (p: already opened), fading in
+    // over fadeIn seconds; 0 starts it at full volume
+    private void begin(Track track, MediaPlayer p, double fadeIn) {
+        paused = false;
+        onsets.reset();
+        if (beatListener != null) beatListener.reset(); // WAVs never get a tempo of their own
+        if (p == null && mapped(track)) {
+            HeadlessEngine e = wavEngine();
+            wav = true;
+            voice = fader().voice(e::setVolume, fadeIn > 0 ? 0 : 1);
+            e.play(track);
+        } else {
+            player = (p != null) ? p : open(track);
+            voice = fader().voice(player::setVolume, fadeIn > 0 ? 0 : 1);
+            player.play();
+        }
+        if (fadeIn > 0) voice.rampTo(1, fadeIn, null);
+    }
+
+    // Lets the current track go: it fades out over seconds on its own (silent
+    // ones go at once) and is disposed of after. Nothing is current then.
+    private void fadeOutCurrent(double seconds) {
+        Fader.Voice v = voice;
+        voice = null;
+        if (v == null) return;
+        if (paused || v.level() == 0) seconds = 0;
+        if (wav) {
+            HeadlessEngine e = wavEngine;
+            wavEngine = null; // the next WAV gets a fresh one
+            wav = false;
+            e.setPositionListener(null);
+            e.setOnEnd(null);
+            e.setGapless(false, null, null);
+            v.rampTo(0, seconds, () -> {
+                v.drop();
+                e.shutdown();
+            });
+        } else if (player != null) {
+            MediaPlayer p = player;
+            player = null;
+            analyse(p, false);
+            v.rampTo(0, seconds, () -> {
+                v.drop();
+                p.dispose();
+            });
+        }
+    }
+
+    private boolean mapped(Track t) {
+        return mappedWav && HeadlessEngine.isWav(t);
+    }
+
+    // FX thread
+    private HeadlessEngine wavEngine() {
+        if (wavEngine == null) {
+            if (wavMetrics == null) wavMetrics = new HeadlessEngine.Metrics();
+            HeadlessEngine e = new HeadlessEngine(wavMetrics);
+            e.setOnEnd(() -> wavEnded(e));
+            gaplessWav(e);
+            e.setPositionListener(positionListener);
+            wavEngine = e;
+        }
+        return wavEngine;
+    }
+
+    private void gaplessWav(HeadlessEngine e) {
+        e.setGapless(gapless, upcoming, t -> wavAdvanced(e, t));
+    }
+
+    // A wav engine's callbacks come on its own thread; ours run on the FX thread
+    private void wavEnded(HeadlessEngine e) {
+        commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (e != wavEngine) return; // something else is playing by now
+            ended();
+            if (onEnd != null) onEnd.run();
+        });
+    }
+
+    private void wavAdvanced(HeadlessEngine e, Track t) {
+        commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (e == wavEngine && onAdvance != null) onAdvance.accept(t);
+        });
+    }
+
+    @Override
+    public void setPositionListener(PositionListener l) {
+        positionListener = l;
+        commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (wavEngine != null) wavEngine.setPositionListener(l);
+            if (l != null && player != null) publish(player.getCurrentTime());
+        });
+    }
+
+    @Override
+    public void setBeatListener(BeatListener l) {
+        commands.submit(CommandQueue.Kind.OTHER, () -> {
+            beatListener = l;
+            onsets.reset();
+            if (player != null) analyse(player, l != null);
+            if (nextPlayer != null) analyse(nextPlayer, l != null);
+        });
+    }
+
+    // Spectrum analysis costs the media pipeline something, so it's only on
+    // while somebody listens
+    private void analyse(MediaPlayer p, boolean on) {
+        if (on) {
+            p.setAudioSpectrumInterval(SPECTRUM_INTERVAL);
+            p.setAudioSpectrumNumBands(SPECTRUM_BANDS);
+            p.setAudioSpectrumThreshold(SPECTRUM_FLOOR_DB);
+        }
+        p.setAudioSpectrumListener(on ? spectrum : null);
     }
 
+    private void onSpectrum(double timestamp, double duration, float[] magnitudes, float[] phases) {
+        BeatListener l = beatListener;
+        if (l == null) return;
+        l.spectrum(timestamp, magnitudes);
+        if (onsets.process(timestamp, magnitudes)) l.beat(timestamp, onsets.bpm());
+    }
+
+    private void publish(Duration t) {
+        PositionListener l = positionListener;
+        if (l == null || t == null) return;
+        Duration total = player.getTotalDuration();
+        l.moved(t.toSeconds(), (total == null || total.isUnknown()) ? 0.0 : total.toSeconds());
+    }
+
+    private void maybePreload(MediaPlayer p, Duration t) {
+        if (!gapless || p != player || nextTrack != null || upcoming == null) return;
+
+        Duration total = p.getTotalDuration();
+        if (total == null || total.isUnknown() || t == null) return;
+        if (total.toSeconds() - t.toSeconds() > Math.max(PRELOAD_SECONDS, crossfade + 4)) return;
+
+        Track next = upcoming.get();
+        if (next == null) return;
+        nextTrack = next;
+        if (mapped(next)) return; // not pre-rolled: started on wavEngine when it's time
+        nextPlayer = open(next); // opens in the background and goes to READY on its own
+    }
+
+    // Crossfade: once the current track is within the crossfade of its end (a
+    // third of it at most, for short ones), the next one starts and takes over
+    private void maybeCrossfade(MediaPlayer p, Duration t) {
+        if (crossfade <= 0 || !gapless || p != player || paused || nextTrack == null || t == null) return;
+        Duration total = p.getTotalDuration();
+        if (total == null || total.isUnknown()) return;
+        double left = total.toSeconds() - t.toSeconds();
+        if (left > Math.min(crossfade, total.toSeconds() / 3)) return;
+        if (nextPlayer != null && nextPlayer.getStatus() != MediaPlayer.Status.READY) return; // maybe next tick
+
+        Track next = nextTrack;
+        MediaPlayer np = nextPlayer;
+        nextPlayer = null;
+        nextTrack = null;
+        fadeOutCurrent(left);
+        begin(next, np, left);
+        if (onAdvance != null) onAdvance.accept(next);
+    }
+
+    private void onEndOfMedia(MediaPlayer ended) {
+        if (ended != player) return;
+
+        if (gapless && nextPlayer != null && nextPlayer.getStatus() == MediaPlayer.Status.READY) {
+            // Swap: nothing is opened on this path
+            MediaPlayer old = player;
+            Fader.Voice oldVoice = voice;
+            Track t = nextTrack;
+            MediaPlayer np = nextPlayer;
+            nextPlayer = null;
+            nextTrack = null;
+
+            begin(t, np, 0);
+            oldVoice.drop();
+            old.dispose();
+
+            if (onAdvance != null) onAdvance.accept(t);
+            return;
+        }
+
+        disposeNext();
+        ended();
+        if (onEnd != null) onEnd.run();
+    }
+
+    // The current track played to its end: it's silent now, so whatever plays
+    // next starts at once instead of crossfading with it
+    private void ended() {
+        if (voice != null) voice.set(0);
+    }
+
+    @Override
+    public void pause() {
+        await(pauseAsync());
+    }
+
+    @Override
+    public void resume() {
+        await(resumeAsync());
+    }
+
+    @Override
+    public void stop() {
+        await(stopAsync());
+    }
+
+    public void seekSeconds(int seconds) {
+        await(seekAsync(seconds));
+    }
+
+    @Override
+    public void seekSeconds(double seconds) {
+        await(seekAsync(seconds));
+    }
+
+    @Override
+    public void setVolume(double v) {
+        await(setVolumeAsync(v));
+    }
+
+    @Override
+    public String nowPlaying(String labelPrefix, Track track) {
+        return await(nowPlayingAsync(labelPrefix, track));
+    }
+
+    @Override
     public void shutdown() {
-        fx(() -> {
+        await(commands.submit(CommandQueue.Kind.OTHER, () -> {
             disposeCurrent();
+            disposeNext();
             Platform.exit();
-        });
+        }));
+    }
+
+    @Override
+    public PlaybackStats stats() {
+        return await(commands.submit(CommandQueue.Kind.OTHER, () -> {
+            if (wavEngine != null) return wavEngine.stats().plus(stalls.sum(), errors.sum());
+            if (wavMetrics != null) return wavMetrics.snapshot(null, null).plus(stalls.sum(), errors.sum());
+            return PlaybackStats.media(stalls.sum(), errors.sum());
+        }));
+    }
+
+    // 0 (off) .. MAX_CROSSFADE seconds; the next track change uses it
+    @Override
+    public void setCrossfade(double seconds) {
+        double s = Double.isNaN(seconds) ? 0 : Math.max(0, Math.min(MAX_CROSSFADE, seconds));
+        commands.submit(CommandQueue.Kind.OTHER, () -> crossfade = s);
+    }
+
+    // FX thread only (the GUI's progress timer)
+    @Override
+    public double getCurrentSeconds() {
+        if (wav) return wavEngine.getCurrentSeconds();
+        return (player == null) ? 0.0 : player.getCurrentTime().toSeconds();
     }
 
+    @Override
+    public double getTotalSeconds() {
+        if (wav) return wavEngine.getTotalSeconds();
+        return (player == null || player.getTotalDuration() == null) ? 0.0 : player.getTotalDuration().toSeconds();
+    }
+
+    // At once, no fade
     private void disposeCurrent() {
+        if (voice != null) {
+            voice.drop();
+            voice = null;
+        }
+        if (wav) {
+            wavEngine.shutdown();
+            wavEngine = null;
+            wav = false;
+        }
         if (player != null) {
             player.stop();
             player.dispose();
@@ -105,6 +489,14 @@ public class PlayerEngine {
         }
     }
 
+    private void disposeNext() {
+        if (nextPlayer != null) {
+            nextPlayer.dispose();
+            nextPlayer = null;
+        }
+        nextTrack = null;
+    }
+
     private static String fmt(Duration dur) {
         if (dur == null || dur.isUnknown()) return "--:--";
         int sec = (int) Math.floor(dur.toSeconds());
@@ -113,32 +505,17 @@ public class PlayerEngine {
         return String.format("%d:%02d", m, s);
     }
 
-    // Run something on JavaFX thread safely (no deadlock if already on FX thread)
-    private static void fx(Runnable r) {
-        if (Platform.isFxApplicationThread()) {
-            r.run();
-            return;
+    // Waits for a queued command. Unlike the old latch this keeps the interrupt
+    // flag, and errors thrown on the FX thread reach the caller.
+    private static <T> T await(CompletableFuture<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
         }
-        CountDownLatch latch = new CountDownLatch(1);
-        Platform.runLater(() -> {
-            try { r.run(); }
-            finally { latch.countDown(); }
-        });
-        try { latch.await(); } catch (InterruptedException ignored) {}
     }
-
-    // PlayerEngine.java
-public double getCurrentSeconds() {
-    return (player == null) ? 0.0 : player.getCurrentTime().toSeconds();
-}
-
-public double getTotalSeconds() {
-    return (player == null || player.getTotalDuration() == null) ? 0.0 : player.getTotalDuration().toSeconds();
-}
-
-public void seekSeconds(double seconds) {
-    if (player == null) return;
-    player.seek(Duration.seconds(seconds));
-}
-
 }
@@ -1,74 +1,616 @@
 package player;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
 
+// Synchronized because the scanner appends from its own threads while the
+// CLI / FX thread navigates.
+//
+// The list is an int[] of TrackStore ids; Track objects are only made for
+// what callers ask for (see TrackStore).
 public class Playlist {
+    // Default order: natural, collated file name (see SortKeys)
+    static final Comparator<Track> ORDER = SortOrder.NAME.comparator();
+
+    // Changes made after the initial load (see LibraryWatcher): one track at a
+    // time, except removals, which come as one call per file or folder deleted.
+    // Called with the playlist locked, on whichever thread made the change.
+    public interface Listener {
+        void onInserted(int index, Track t);
+        // The indexes (ascending) the removed tracks had before the removal
+        void onRemoved(int[] indexes);
+        void onUpdated(int index, Track t);
+    }
+
     private final Set<String> extensions;
-    private List<Track> tracks = new ArrayList<>();
+    private TrackStore store = new TrackStore(1); // a new one per load
+    private Path root;                                   // the loaded folder
+    private int[] ids = new int[1024];
+    private int count = 0;
     private int idx = -1;
+    private boolean sorted = true;
+    private SortOrder order = SortOrder.NAME;
+    private Shuffle shuffle;                             // null unless shuffle is on
+    private final Random rng = new Random();
+    private final PlayQueue queue = new PlayQueue();     // up next, ahead of the playlist
+    private Track playing;                               // the queued track playing; null while the playlist is
+    private LibraryScanner scanner;
+    private LibraryIndex scanned; // directories seen by the last scan
+    private LibraryWatcher watcher;
+    private Listener listener;
+    private MetadataLoader metadata;                     // started with the first load
+    private volatile Consumer<List<Track>> metadataListener;
+    private final SearchIndex search = new SearchIndex(ORDER);
+    private static final int LIST_CHUNK = 4096; // ids copied per lock in list()
 
     public Playlist(Set<String> extensions) {
         this.extensions = extensions;
     }
 
+    // Blocking load, same result as before: every track, sorted.
     public void loadFromFolder(Path folder) throws IOException {
+        try {
+            loadFromFolderAsync(folder, null).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw e;
+        }
+    }
+
+    // Scans in the background. onBatch is called for every batch right after it
+    // was appended, so the playlist and the caller's view keep the same order.
+    // While scanning the list is in discovery order; once the returned future
+    // completes it is sorted (call all() again to pick up the final order).
+    //
+    // The library index from the previous run is read first, so only directories
+    // that changed since then are listed again; the index is rewritten afterwards
+    // if anything differed.
+    public synchronized CompletableFuture<Integer> loadFromFolderAsync(Path folder, Consumer<List<Track>> onBatch) {
         if (!Files.isDirectory(folder)) throw new IllegalArgumentException("Not a folder: " + folder);
 
-        try (Stream<Path> s = Files.walk(folder)) {
-            tracks = s.filter(Files::isRegularFile)
-                    .filter(p -> extensions.contains(ext(p)))
-                    .sorted(Comparator.comparing(p -> p.getFileName().toString().toLowerCase(Locale.ROOT)))
-                    .map(Track::new)
-                    .toList();
+        if (scanner != null) scanner.cancel();
+        stopWatching();
+        TrackStore st = new TrackStore();
+        LibraryScanner s = new LibraryScanner(extensions, st);
+        scanner = s;
+        store = st;
+        root = folder.toAbsolutePath().normalize();
+        ids = new int[1024];
+        count = 0;
+        search.clear(st);
+        if (shuffle != null) shuffle.reset(0, -1);
+        idx = -1;
+        sorted = false;
+
+        LibraryIndex fresh = new LibraryIndex(folder, st);
+        scanned = fresh;
+        AtomicInteger listed = new AtomicInteger();
+
+        LibraryScanner.Listener listener = new LibraryScanner.Listener() {
+            @Override
+            public void onTracks(int[] batch) {
+                synchronized (Playlist.this) {
+                    if (scanner != s) return; // a newer load replaced this one
+                    if (shuffle != null) shuffle.appended(count, batch.length);
+                    if (count + batch.length > ids.length) ids = Arrays.copyOf(ids, Math.max(ids.length * 2, count + batch.length));
+                    System.arraycopy(batch, 0, ids, count, batch.length);
+                    count += batch.length;
+                    search.addAll(batch);
+                    if (idx < 0) idx = 0;
+                    if (onBatch != null) onBatch.accept(st.tracks(batch, 0, batch.length));
+                }
+                metadata().submit(st, batch); // tags are read while the scan goes on
+            }
+
+            @Override
+            public void onDirectory(LibraryIndex.Dir dir, boolean fromIndex) {
+                fresh.put(dir);
+                if (!fromIndex) listed.incrementAndGet();
+            }
+        };
+
+        return CompletableFuture.supplyAsync(() -> LibraryIndex.load(folder, st))
+                .thenCompose(known -> s.scan(folder, listener, known).thenApply(n -> {
+                    synchronized (this) {
+                        if (scanner == s) sortKeepingCurrent();
+                    }
+                    // Removed directories show up as a smaller directory count; keys
+                    // built with another collation are saved once, built anew
+                    if (!s.isCancelled() && (listed.get() > 0 || fresh.dirCount() != known.dirCount() || !known.keysReused())) {
+                        try { fresh.save(); }
+                        catch (IOException e) { System.out.println("Could not save library index: " + e.getMessage()); }
+                    }
+                    return n;
+                }));
+    }
+
+    // Sorts the ids in place (see SortOrder.sort)
+    private void sortKeepingCurrent() {
+        int cur = (idx >= 0 && idx < count) ? ids[idx] : -1;
+        // the shuffle holds indexes, so it needs to know where every track went
+        int[] before = (shuffle != null) ? Arrays.copyOf(ids, count) : null;
+        order.sort(store, ids, count);
+        if (before != null) {
+            int[] at = new int[store.size()];
+            for (int i = 0; i < count; i++) at[ids[i]] = i;
+            int[] newIndex = new int[count];
+            for (int i = 0; i < count; i++) newIndex[i] = at[before[i]];
+            shuffle.remap(newIndex);
+        }
+        sorted = true;
+        idx = (cur >= 0) ? positionOf(cur) : (count == 0 ? -1 : 0);
+    }
+
+    // Re-sorts by o. While a scan is running the order is only remembered and
+    // applied when it finishes. Call all() afterwards to pick up the new order.
+    // Orders that use tags see the tags read so far.
+    public synchronized void sort(SortOrder o) {
+        order = o;
+        if (sorted) sortKeepingCurrent();
+    }
+
+    public synchronized SortOrder sortOrder() {
+        return order;
+    }
+
+    // ---------------- Metadata ----------------
+
+    // Gets every batch of tracks whose tags were just read (on a loader thread)
+    public void setMetadataListener(Consumer<List<Track>> l) {
+        this.metadataListener = l;
+    }
+
+    // The UI is about to show t; read its tags before the backlog
+    public void prioritizeMetadata(Track t) {
+        metadata().prioritize(t);
+    }
+
+    private synchronized MetadataLoader metadata() {
+        if (metadata == null) {
+            metadata = new MetadataLoader(batch -> {
+                search.refresh(batch); // titles/artists are searchable now
+                Consumer<List<Track>> l = metadataListener;
+                if (l != null) l.accept(batch);
+            }, this::saveIndex);
+        }
+        return metadata;
+    }
+
+    // Tags are stored in the library index too, so the next start doesn't read them again
+    private void saveIndex() {
+        LibraryIndex index;
+        synchronized (this) {
+            if (!sorted) return; // scan still running; it saves when it's done
+            index = scanned;
+        }
+        if (index == null) return;
+        try { index.save(); }
+        catch (IOException e) { System.out.println("Could not save library index: " + e.getMessage()); }
+    }
+
+    // ---------------- Search ----------------
+
+    // Tracks whose name or tags contain every word of query (case and accents
+    // ignored), word-start matches first. Uses its own lock, not the playlist's.
+    public List<Track> search(String query, int limit) {
+        return search.find(query, limit);
+    }
+
+    // Current position of t (by path) in the list, or -1 if it's gone.
+    // t carries its own sort keys, so this can binary-search in any order;
+    // tags that arrived after the last sort can make that miss, hence the fallback.
+    public synchronized int indexOf(Track t) {
+        if (sorted) {
+            int i = binarySearch(t.store(), t.id());
+            if (i >= 0) return i;
+        }
+        return (t.store() == store) ? positionOf(t.id()) : scanFor(t.path());
+    }
+
+    // ---------------- Live updates ----------------
+
+    public synchronized void setListener(Listener l) {
+        this.listener = l;
+    }
+
+    // Watches every directory of the last scan. Call once the load has finished;
+    // changes are applied to the playlist through applyOn.
+    public synchronized void startWatching(Executor applyOn) throws IOException {
+        stopWatching();
+        if (scanned == null) return;
+        watcher = new LibraryWatcher(this, extensions, applyOn);
+        for (Path dir : scanned.dirPaths()) watcher.register(dir);
+        watcher.start();
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) watcher.close();
+        watcher = null;
+    }
+
+    // Inserts t at its sorted position, or refreshes it if the path is already listed.
+    public synchronized void addOrUpdate(Track t) {
+        int i = indexOf(t.path());
+        if (i >= 0) {
+            int id = ids[i];
+            store.update(id, t.size(), t.modified()); // same id, tags read again
+            search.add(id);
+            Track u = store.track(id);
+            metadata().submit(u);
+            if (listener != null) listener.onUpdated(i, u);
+            return;
         }
-        idx = tracks.isEmpty() ? -1 : 0;
+        int id = store.adopt(t);
+        int pos = sorted ? binarySearch(store, id) : count;
+        if (pos < 0) pos = -pos - 1;
+        if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+        System.arraycopy(ids, pos, ids, pos + 1, count - pos);
+        ids[pos] = id;
+        count++;
+        search.add(id);
+        if (shuffle != null) shuffle.inserted(pos);
+        Track added = store.track(id);
+        metadata().submit(added);
+        // Keep pointing at the same track when something lands in front of it
+        if (pos <= idx) idx++;
+        if (idx < 0) idx = 0;
+        if (listener != null) listener.onInserted(pos, added);
     }
 
-    public boolean isEmpty() { return tracks.isEmpty(); }
-    public int size() { return tracks.size(); }
-    public int index() { return idx; }
-    public List<Track> all() { return tracks; }
+    // Removes the track at p, or every track below p if p was a folder.
+    public synchronized void removeUnder(Path p) {
+        int i = indexOf(p);
+        if (i >= 0) {
+            int id = ids[i];
+            removeWhere(j -> j == id);
+            return;
+        }
+        boolean[] under = store.dirsUnder(p);
+        removeWhere(id -> under[store.dirOf(id)]);
+    }
 
-    public Track current() {
-        if (idx < 0 || idx >= tracks.size()) return null;
-        return tracks.get(idx);
+    // Makes the tracks directly inside dir match onDisk (used after dropped watch events).
+    public synchronized void syncFolder(Path dir, List<Track> onDisk) {
+        Set<Path> present = new HashSet<>();
+        for (Track t : onDisk) present.add(t.path());
+        int d = store.findDir(dir);
+        if (d >= 0) removeWhere(id -> store.dirOf(id) == d && !present.contains(store.path(id)));
+        for (Track t : onDisk) addOrUpdate(t);
     }
 
-    public Track get(int i) {
-        if (i < 0 || i >= tracks.size()) throw new IllegalArgumentException("Index out of range.");
-        return tracks.get(i);
+    // Removes every track whose id matches in one pass, however many there are:
+    // ids compacted once, the shuffle remapped once, one listener call. The
+    // tracks' slots in the store stay unused until the next load.
+    private void removeWhere(IntPredicate gone) {
+        int[] removed = new int[16];
+        int r = 0, w = 0, cur = idx;
+        int[] newIndex = (shuffle != null) ? new int[count] : null;
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            if (gone.test(id)) {
+                if (r == removed.length) removed = Arrays.copyOf(removed, r * 2);
+                removed[r++] = i;
+                search.remove(id);
+                if (newIndex != null) newIndex[i] = -1;
+                if (i <= idx) cur--; // a removed current track: the one after it becomes next()
+            } else {
+                if (newIndex != null) newIndex[i] = w;
+                ids[w++] = id;
+            }
+        }
+        if (r == 0) return;
+        count = w;
+        idx = (count == 0) ? -1 : cur;
+        if (shuffle != null) shuffle.removed(newIndex);
+        if (listener != null) listener.onRemoved(Arrays.copyOf(removed, r));
+    }
+
+    private int indexOf(Path p) {
+        if (sorted && order.byPathOnly()) {
+            Track probe = new Track(p);
+            return Math.max(binarySearch(probe.store(), probe.id()), -1);
+        }
+        return scanFor(p);
+    }
+
+    // Position of track p of store ps, or -(insertion point) - 1. Ties are
+    // broken by path, so a hit is the same file.
+    private int binarySearch(TrackStore ps, int p) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = order.compare(store, ids[mid], ps, p);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
     }
 
-    public Track setIndex(int i) {
+    private int positionOf(int id) {
+        for (int i = 0; i < count; i++) if (ids[i] == id) return i;
+        return -1;
+    }
+
+    private int scanFor(Path p) {
+        int d = store.findDir(p.getParent());
+        if (d < 0) return -1;
+        byte[] name = p.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < count; i++) {
+            if (store.dirOf(ids[i]) == d && store.nameEquals(ids[i], name)) return i;
+        }
+        return -1;
+    }
+
+    public synchronized boolean isEmpty() { return count == 0; }
+    public synchronized int size() { return count; }
+    // Position of the current track; a queued track not in the list gives -1
+    public synchronized int index() { return (playing != null) ? indexOf(playing) : idx; }
+
+    // Snapshot, safe to iterate while a scan is still appending. Holds only
+    // the ids; a Track is made per get().
+    public synchronized List<Track> all() { return store.tracks(Arrays.copyOf(ids, count), 0, count); }
+
+    public synchronized Track current() {
+        return (playing != null) ? playing : atIndex();
+    }
+
+    private Track atIndex() {
+        if (idx < 0 || idx >= count) return null;
+        return store.track(ids[idx]);
+    }
+
+    public synchronized Track get(int i) {
+        if (i < 0 || i >= count) throw new IllegalArgumentException("Index out of range.");
+        return store.track(ids[i]);
+    }
+
+    public synchronized Track setIndex(int i) {
         get(i); // validate
+        leaveQueue();
         idx = i;
+        if (shuffle != null) shuffle.moveTo(i);
         return current();
     }
 
-    public Track next() {
-        if (tracks.isEmpty()) return null;
-        idx = (idx + 1) % tracks.size();
+    // ---------------- Shuffle ----------------
+
+    // With shuffle on, next/prev/peekNext/peekPrev follow a shuffled order
+    // (see Shuffle) starting from the current track: every track plays once
+    // per cycle and prev() goes back through what actually played.
+    public synchronized void setShuffle(boolean on) {
+        if (on == (shuffle != null)) return;
+        if (on) {
+            shuffle = new Shuffle(rng);
+            shuffle.reset(count, idx);
+        } else {
+            shuffle = null;
+        }
+    }
+
+    public synchronized boolean isShuffle() {
+        return shuffle != null;
+    }
+
+    // ---------------- Queue ----------------
+
+    // Tracks queued to play next; they survive reloads and sorting
+    public PlayQueue queue() {
+        return queue;
+    }
+
+    // Back to the playlist from wherever the queue left off
+    private void leaveQueue() {
+        playing = null;
+        queue.forgetPlayed();
+    }
+
+    // ---------------- Navigation ----------------
+    // The queue comes first. While queued tracks play, idx stays where the
+    // playlist was, so it carries on from there once the queue is empty.
+
+    public synchronized Track next() {
+        Track q = queue.poll();
+        if (q != null) return playing = q;
+        leaveQueue();
+        if (count == 0) return null;
+        idx = (shuffle != null) ? shuffle.next() : (idx + 1) % count;
         return current();
     }
 
-    public Track prev() {
-        if (tracks.isEmpty()) return null;
-        idx = (idx - 1 + tracks.size()) % tracks.size();
+    // What next() would return, without moving
+    public synchronized Track peekNext() {
+        Track q = queue.peekFirst();
+        if (q != null) return q;
+        if (count == 0) return null;
+        return get((shuffle != null) ? shuffle.peekNext() : (idx + 1) % count);
+    }
+
+    // What prev() would return, without moving (null at the start of a shuffle cycle)
+    public synchronized Track peekPrev() {
+        if (playing != null) {
+            Track q = queue.peekBack();
+            return (q != null) ? q : atIndex();
+        }
+        if (count == 0) return null;
+        if (shuffle != null) {
+            int i = shuffle.peekPrev();
+            return (i >= 0) ? get(i) : null;
+        }
+        int i = Math.max(idx, 0);
+        return get((i - 1 + count) % count);
+    }
+
+    // Points the playlist at t (looked up by path, so it survives inserts/removals
+    // since t was picked). Returns the new index, or -1 if t is no longer listed.
+    public synchronized int moveTo(Track t) {
+        int i = indexOf(t);
+        if (i >= 0) {
+            leaveQueue();
+            idx = i;
+            if (shuffle != null) shuffle.moveTo(i);
+        }
+        return i;
+    }
+
+    // Auto-advance to t, which came from peekNext(): takes it off the queue if
+    // that's where it came from. A replay of the current track (loop) changes nothing.
+    public synchronized void advanceTo(Track t) {
+        if (t.equals(current())) return;
+        if (t.equals(queue.peekFirst())) next();
+        else moveTo(t);
+    }
+
+    public synchronized Track prev() {
+        if (playing != null) {
+            playing = queue.back(); // back onto the queue; null: the playlist track before it
+            return current();
+        }
+        if (count == 0) return null;
+        if (shuffle != null) {
+            int i = shuffle.prev();
+            if (i >= 0) idx = i; // nothing earlier this cycle: stay
+            return current();
+        }
+        if (idx < 0) idx = 0; // current track was removed
+        idx = (idx - 1 + count) % count;
         return current();
     }
 
-    public void list(int n) {
-        int limit = Math.min(n, tracks.size());
-        for (int i = 0; i < limit; i++) {
-            System.out.printf("%4d  %s%n", i, tracks.get(i).displayName());
+    // Streams the tracks q asks for to out: "   i  name" lines, or with json one
+    // object per line. If there are more after the page, a last line gives the
+    // command for the next one, same options ("... more: list --from <i> ..." /
+    // {"next":<i>,"more":"list --from <i> ..."}).
+    //
+    // Ids are copied out a chunk at a time under the lock and written outside
+    // it, so a 300k-track listing doesn't hold up the scanner or the player;
+    // names go straight from the store to one buffered writer.
+    public void list(Writer out, ListQuery q) throws IOException {
+        TrackStore st;
+        Path dir;
+        synchronized (this) {
+            st = store;
+            dir = (q.dir() != null && root != null) ? root.resolve(q.dir()).normalize() : null;
+        }
+        boolean[] under = (dir != null) ? st.dirsUnder(dir) : null;
+        byte[] ext = (q.ext() != null) ? ("." + q.ext()).getBytes(StandardCharsets.UTF_8) : null;
+        char[] index = new char[11];
+        StringBuilder json = q.json() ? new StringBuilder(256) : null;
+
+        int[] chunk = new int[LIST_CHUNK];
+        int at = q.from(), shown = 0;
+        while (true) {
+            int n;
+            synchronized (this) {
+                if (store != st) return; // reloaded meanwhile
+                if (at >= count) break;
+                n = Math.min(LIST_CHUNK, count - at);
+                System.arraycopy(ids, at, chunk, 0, n);
+            }
+            for (int k = 0; k < n; k++, at++) {
+                int id = chunk[k];
+                if (under != null) {
+                    int d = st.dirOf(id);
+                    if (d >= under.length || !under[d]) continue;
+                }
+                if (ext != null && !st.nameEndsWith(id, ext)) continue;
+                if (shown == q.count()) {
+                    if (json != null) {
+                        json.setLength(0);
+                        json.append("{\"next\":").append(at);
+                        jsonField(json, "more", q.more(at));
+                        out.append(json).write("}\n");
+                    } else {
+                        out.write("... more: " + q.more(at) + "\n");
+                    }
+                    return;
+                }
+                if (json != null) {
+                    json.setLength(0);
+                    appendJson(json, at, st, id);
+                    out.append(json).write('\n');
+                } else {
+                    writeIndex(out, index, at);
+                    out.write(st.name(id));
+                    out.write('\n');
+                }
+                shown++;
+            }
+        }
+    }
+
+    // The same as one string, without the last newline (control server replies)
+    public String list(ListQuery q) {
+        StringWriter w = new StringWriter();
+        try {
+            list(w, q);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not from a StringWriter
+        }
+        int end = w.getBuffer().length();
+        return w.getBuffer().substring(0, (end > 0) ? end - 1 : 0);
+    }
+
+    // "%4d  " without the format parsing
+    private static void writeIndex(Writer out, char[] buf, int i) throws IOException {
+        int p = buf.length;
+        buf[--p] = ' ';
+        buf[--p] = ' ';
+        do {
+            buf[--p] = (char) ('0' + i % 10);
+            i /= 10;
+        } while (i > 0);
+        while (p > buf.length - 6) buf[--p] = ' ';
+        out.write(buf, p, buf.length - p);
+    }
+
+    private static void appendJson(StringBuilder sb, int index, TrackStore st, int id) {
+        sb.append("{\"index\":").append(index);
+        jsonField(sb, "path", st.path(id).toString());
+        sb.append(",\"size\":").append(st.size(id)).append(",\"modified\":").append(st.modified(id));
+        TrackInfo info = st.info(id);
+        if (info != null) {
+            jsonField(sb, "title", info.title());
+            jsonField(sb, "artist", info.artist());
+            jsonField(sb, "album", info.album());
+            if (info.trackNo() >= 0) sb.append(",\"trackNo\":").append(info.trackNo());
+            if (info.durationMs() >= 0) sb.append(",\"durationMs\":").append(info.durationMs());
+        }
+        sb.append('}');
+    }
+
+    private static void jsonField(StringBuilder sb, String name, String value) {
+        if (value == null) return;
+        sb.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
         }
-        if (tracks.size() > limit) System.out.println("... (" + (tracks.size() - limit) + " more)");
+        sb.append('"');
     }
 
-    private static String ext(Path p) {
+    static String ext(Path p) {
         String name = p.getFileName().toString();
         int dot = name.lastIndexOf('.');
         return (dot >= 0) ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
@@ -0,0 +1,115 @@
+package player;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Wraps an engine and reports its state changes as ControlServer events, so
+// subscribers hear about them whoever caused them (keyboard, CLI, script,
+// end of track):
+//   playing <name>, paused, resumed, stopped, ended, seek <seconds>, volume <0..1>
+final class PublishingEngine implements AudioEngine {
+    private final AudioEngine engine;
+    private final Consumer<String> events;
+
+    PublishingEngine(AudioEngine engine, Consumer<String> events) {
+        this.engine = engine;
+        this.events = events;
+    }
+
+    @Override
+    public void setOnEnd(Runnable onEnd) {
+        engine.setOnEnd(() -> {
+            events.accept("ended");
+            onEnd.run();
+        });
+    }
+
+    @Override
+    public void setGapless(boolean on, Supplier<Track> upcoming, Consumer<Track> onAdvance) {
+        engine.setGapless(on, upcoming, t -> {
+            events.accept("playing " + t.displayName());
+            onAdvance.accept(t);
+        });
+    }
+
+    @Override
+    public void invalidateUpcoming() {
+        engine.invalidateUpcoming();
+    }
+
+    @Override
+    public void play(Track track) {
+        engine.play(track);
+        if (track != null) events.accept("playing " + track.displayName());
+    }
+
+    @Override
+    public void pause() {
+        engine.pause();
+        events.accept("paused");
+    }
+
+    @Override
+    public void resume() {
+        engine.resume();
+        events.accept("resumed");
+    }
+
+    @Override
+    public void stop() {
+        engine.stop();
+        events.accept("stopped");
+    }
+
+    @Override
+    public void seekSeconds(double seconds) {
+        engine.seekSeconds(seconds);
+        events.accept("seek " + Math.max(0, seconds));
+    }
+
+    @Override
+    public void setVolume(double v) {
+        engine.setVolume(v);
+        events.accept("volume " + Math.max(0.0, Math.min(1.0, v)));
+    }
+
+    @Override
+    public void setCrossfade(double seconds) {
+        engine.setCrossfade(seconds);
+    }
+
+    @Override
+    public String nowPlaying(String labelPrefix, Track track) {
+        return engine.nowPlaying(labelPrefix, track);
+    }
+
+    @Override
+    public void setBeatListener(BeatListener l) {
+        engine.setBeatListener(l);
+    }
+
+    @Override
+    public void setPositionListener(PositionListener l) {
+        engine.setPositionListener(l);
+    }
+
+    @Override
+    public PlaybackStats stats() {
+        return engine.stats();
+    }
+
+    @Override
+    public double getCurrentSeconds() {
+        return engine.getCurrentSeconds();
+    }
+
+    @Override
+    public double getTotalSeconds() {
+        return engine.getTotalSeconds();
+    }
+
+    @Override
+    public void shutdown() {
+        engine.shutdown();
+    }
+}
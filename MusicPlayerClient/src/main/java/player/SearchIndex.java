@@ -0,0 +1,250 @@
+package player;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// In-memory substring index over track names and tags, kept up to date by
+// Playlist. Each track's searchable text is normalized once (lowercase, accents
+// stripped): file name without extension, title, artist and album, one per line.
+//
+// Every distinct 3-char gram of that text gets a posting. A query looks up the
+// grams of its longest word, walks only the shortest posting list and checks
+// those candidates with contains(). Queries shorter than a gram scan the texts
+// directly, stopping once enough matches were found.
+//
+// Postings are doc ids in increasing order stored as varint deltas, so they
+// cost a byte or two per (track, gram). Removed tracks leave a hole that is
+// compacted away once holes outnumber live tracks. Texts are kept as UTF-8 in
+// one array and matched bytewise (UTF-8 substrings match like the strings do);
+// tracks are TrackStore ids, so nothing here is an object per track.
+final class SearchIndex {
+    private static final int GRAM = 3;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private static final class Postings {
+        byte[] data = new byte[4];
+        int len;
+        int count;
+        int last;
+
+        void add(int id) {
+            if (len + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            int d = id - last;
+            last = id;
+            while ((d & ~0x7F) != 0) {
+                data[len++] = (byte) ((d & 0x7F) | 0x80);
+                d >>>= 7;
+            }
+            data[len++] = (byte) d;
+            count++;
+        }
+    }
+
+    private final Comparator<Track> order;
+    private final Map<Long, Postings> grams = new HashMap<>();
+    private TrackStore store = new TrackStore(1);
+    private int[] docOf = new int[1024];  // track id -> doc id + 1, 0 if not indexed
+    private int[] docs = new int[1024];   // doc id -> track id, -1 for a hole
+    private int[] textOff = new int[1025]; // doc d's text is text[textOff[d], textOff[d + 1])
+    private byte[] text = new byte[1 << 16];
+    private int size = 0; // doc ids handed out, including holes
+    private int live = 0;
+
+    // Results within each rank are returned in this order
+    SearchIndex(Comparator<Track> order) {
+        this.order = order;
+    }
+
+    // Empties the index; tracks added from now on are ids of store
+    synchronized void clear(TrackStore store) {
+        this.store = store;
+        grams.clear();
+        docOf = new int[Math.max(1024, store.size())];
+        docs = new int[1024];
+        textOff = new int[1025];
+        text = new byte[1 << 16];
+        size = 0;
+        live = 0;
+    }
+
+    synchronized void addAll(int[] ids) {
+        for (int id : ids) add(id);
+    }
+
+    // Indexes track id, replacing what was indexed for it before
+    synchronized void add(int id) {
+        remove(id);
+
+        String str = text(store.track(id));
+        byte[] t = str.getBytes(StandardCharsets.UTF_8);
+        if (size == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+            textOff = Arrays.copyOf(textOff, docs.length + 1);
+        }
+        int end = textOff[size];
+        if (end + t.length > text.length) text = Arrays.copyOf(text, Math.max(text.length * 2, end + t.length));
+        System.arraycopy(t, 0, text, end, t.length);
+
+        int doc = size++;
+        docs[doc] = id;
+        textOff[size] = end + t.length;
+        if (id >= docOf.length) docOf = Arrays.copyOf(docOf, Math.max(docOf.length * 2, id + 1));
+        docOf[id] = doc + 1;
+        live++;
+
+        for (long g : distinctGrams(str)) grams.computeIfAbsent(g, k -> new Postings()).add(doc);
+    }
+
+    // Re-indexes tracks whose tags were just read, if they're still indexed
+    synchronized void refresh(Collection<Track> tracks) {
+        for (Track t : tracks) {
+            if (t.store() == store && t.id() < docOf.length && docOf[t.id()] != 0) add(t.id());
+        }
+    }
+
+    synchronized void remove(int id) {
+        if (id >= docOf.length || docOf[id] == 0) return;
+        docs[docOf[id] - 1] = -1;
+        docOf[id] = 0;
+        live--;
+        // Postings still point at the hole; rebuild once holes dominate
+        if (size - live > 1024 && size - live > live) compact();
+    }
+
+    synchronized int size() {
+        return live;
+    }
+
+    // Tracks containing every word of the query, at most limit of them.
+    // Matches at the start of a word rank before matches inside one.
+    synchronized List<Track> find(String query, int limit) {
+        String q = normalize(query).trim();
+        if (q.isEmpty() || limit <= 0) return List.of();
+        String[] words = q.split("\\s+");
+
+        String longest = words[0];
+        for (String w : words) if (w.length() > longest.length()) longest = w;
+
+        byte[] qb = q.getBytes(StandardCharsets.UTF_8);
+        byte[][] wb = new byte[words.length][];
+        for (int i = 0; i < words.length; i++) wb[i] = words[i].getBytes(StandardCharsets.UTF_8);
+
+        List<Track> starts = new ArrayList<>();
+        List<Track> inside = new ArrayList<>();
+
+        if (longest.length() >= GRAM) {
+            Postings best = null;
+            for (int i = 0; i + GRAM <= longest.length(); i++) {
+                Postings p = grams.get(gram(longest, i));
+                if (p == null) return List.of(); // that gram occurs nowhere
+                if (best == null || p.count < best.count) best = p;
+            }
+            int doc = 0;
+            for (int pos = 0; pos < best.len && starts.size() < limit; ) {
+                int d = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = best.data[pos++];
+                    d |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+                doc += d;
+                if (docs[doc] >= 0) match(doc, qb, wb, limit, starts, inside);
+            }
+        } else {
+            for (int doc = 0; doc < size && starts.size() < limit; doc++) {
+                if (docs[doc] >= 0) match(doc, qb, wb, limit, starts, inside);
+            }
+        }
+
+        starts.sort(order);
+        inside.sort(order);
+        List<Track> out = new ArrayList<>(Math.min(limit, starts.size() + inside.size()));
+        out.addAll(starts);
+        for (int i = 0; i < inside.size() && out.size() < limit; i++) out.add(inside.get(i));
+        return out;
+    }
+
+    private void match(int doc, byte[] q, byte[][] words, int limit, List<Track> starts, List<Track> inside) {
+        int from = textOff[doc], to = textOff[doc + 1];
+        for (byte[] w : words) if (indexOf(text, from, to, w, from) < 0) return;
+
+        if (startsWord(from, to, q)) starts.add(store.track(docs[doc]));
+        else if (inside.size() < limit) inside.add(store.track(docs[doc]));
+    }
+
+    private boolean startsWord(int from, int to, byte[] q) {
+        for (int i = indexOf(text, from, to, q, from); i >= 0; i = indexOf(text, from, to, q, i + 1)) {
+            // a non-ASCII byte before it is part of a letter (accents are stripped)
+            if (i == from || (text[i - 1] >= 0 && !Character.isLetterOrDigit(text[i - 1]))) return true;
+        }
+        return false;
+    }
+
+    // First index >= at of needle in hay[from, to), or -1
+    private static int indexOf(byte[] hay, int from, int to, byte[] needle, int at) {
+        byte first = needle[0];
+        for (int i = at, last = to - needle.length; i <= last; i++) {
+            if (hay[i] != first) continue;
+            int k = 1;
+            while (k < needle.length && hay[i + k] == needle[k]) k++;
+            if (k == needle.length) return i;
+        }
+        return -1;
+    }
+
+    private void compact() {
+        int[] ids = new int[live];
+        int n = 0;
+        for (int d = 0; d < size; d++) if (docs[d] >= 0) ids[n++] = docs[d];
+        clear(store);
+        addAll(ids);
+    }
+
+    // ---------------- Text ----------------
+
+    static String text(Track t) {
+        StringBuilder sb = new StringBuilder(96);
+        String name = t.displayName();
+        int dot = name.lastIndexOf('.');
+        sb.append(dot > 0 ? name.substring(0, dot) : name);
+        TrackInfo i = t.info();
+        if (i != null) {
+            if (i.title() != null) sb.append('\n').append(i.title());
+            if (i.artist() != null) sb.append('\n').append(i.artist());
+            if (i.album() != null) sb.append('\n').append(i.album());
+        }
+        return normalize(sb.toString());
+    }
+
+    // Lowercase, accents stripped ("Beyoncé" -> "beyonce"); ASCII skips the Normalizer
+    static String normalize(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                s = MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("");
+                break;
+            }
+        }
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    private static long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    private static long[] distinctGrams(String text) {
+        int n = Math.max(0, text.length() - GRAM + 1);
+        long[] g = new long[n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            // grams never span two fields
+            if (text.charAt(i) == '\n' || text.charAt(i + 1) == '\n' || text.charAt(i + 2) == '\n') continue;
+            g[k++] = gram(text, i);
+        }
+        Arrays.sort(g, 0, k);
+        int u = 0;
+        for (int i = 0; i < k; i++) if (u == 0 || g[i] != g[u - 1]) g[u++] = g[i];
+        return Arrays.copyOf(g, u);
+    }
+}
@@ -0,0 +1,181 @@
+package player;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Shuffle order for Playlist, as a permutation of track indexes in an int[].
+//
+// Positions [0, cursor] are the tracks played this cycle (so prev() walks back
+// through them), the rest is the pool still to come. The permutation is a
+// Fisher-Yates shuffle drawn lazily: position k is only fixed when it's about
+// to be played, by swapping in a random pool entry. That keeps next/prev/peek
+// O(1) and every order equally likely. When the pool runs out a new cycle
+// starts, and its first track is never the one that ended the last cycle.
+// Peeking past the end only picks that track (pending); the cycle, and with it
+// the history, starts over when playback actually gets there.
+//
+// Library changes shift track indexes; the Playlist reports them here (O(n),
+// rare) so the current track and the play history stay where they are.
+// Not thread-safe; Playlist calls it with its lock held.
+final class Shuffle {
+    private final Random rng;
+    private int[] perm = new int[16];
+    private int n = 0;       // tracks in the permutation
+    private int cursor = -1; // position of the current track, -1 before the first
+    private int drawn = 0;   // positions [0, drawn) are fixed
+    private int pending = -1; // track that starts the next cycle, once peeked at; -1: not picked
+
+    Shuffle(Random rng) {
+        this.rng = rng;
+    }
+
+    // New permutation of size tracks that starts at track current (-1: none)
+    void reset(int size, int current) {
+        perm = new int[Math.max(16, size)];
+        for (int i = 0; i < size; i++) perm[i] = i;
+        n = size;
+        cursor = -1;
+        drawn = 0;
+        pending = -1;
+        if (current >= 0 && current < size) {
+            swap(0, current);
+            cursor = 0;
+            drawn = 1;
+        }
+    }
+
+    // Track index next() would return, without moving; -1 if there are no tracks
+    int peekNext() {
+        if (n == 0) return -1;
+        if (cursor + 1 >= n) {
+            // the cycle's last track sits at n - 1; the next one comes from the others
+            if (pending < 0) pending = perm[(n > 1) ? rng.nextInt(n - 1) : 0];
+            return pending;
+        }
+        draw(cursor + 1);
+        return perm[cursor + 1];
+    }
+
+    int next() {
+        int i = peekNext();
+        if (i < 0) return -1;
+        if (cursor + 1 >= n) newCycle(i);
+        cursor++;
+        return i;
+    }
+
+    // Track index prev() would return, without moving
+    int peekPrev() {
+        return (cursor > 0) ? perm[cursor - 1] : -1;
+    }
+
+    // The previously played track, or -1 at the start of a cycle
+    int prev() {
+        if (cursor <= 0) return -1;
+        return perm[--cursor];
+    }
+
+    // The user jumped to track: it becomes the newest entry in the history.
+    // Advancing to the track peekNext() returned is the O(1) case.
+    void moveTo(int track) {
+        if (cursor >= 0 && perm[cursor] == track) return;
+        if (cursor + 1 >= n && track == pending) {
+            newCycle(track);
+            cursor++;
+            return;
+        }
+        if (cursor + 1 < drawn && perm[cursor + 1] == track) {
+            cursor++;
+            return;
+        }
+        int p = positionOf(track);
+        if (p < 0) return;
+        take(p);
+        // cursor + 1 <= drawn always holds, so the inserted entry counts as drawn
+        put(cursor + 1, track);
+        drawn++;
+        cursor++;
+    }
+
+    // ---------------- Library changes ----------------
+
+    // Tracks [from, from + count) were appended to the playlist; they join the pool
+    void appended(int from, int count) {
+        for (int i = 0; i < count; i++) put(n, from + i);
+    }
+
+    // A track was inserted at index; everything at or after it moved up by one
+    void inserted(int index) {
+        for (int k = 0; k < n; k++) if (perm[k] >= index) perm[k]++;
+        if (pending >= index) pending++;
+        put(n, index);
+    }
+
+    // Tracks were removed: old index i is now newIndex[i], or -1 if it's gone.
+    // One pass, however many went; the rest keep their order.
+    void removed(int[] newIndex) {
+        int w = 0, c = cursor, d = drawn;
+        for (int k = 0; k < n; k++) {
+            int t = newIndex[perm[k]];
+            if (t >= 0) {
+                perm[w++] = t;
+                continue;
+            }
+            if (k <= cursor) c--;
+            if (k < drawn) d--;
+        }
+        n = w;
+        cursor = c;
+        drawn = d;
+        if (pending >= 0) pending = newIndex[pending];
+    }
+
+    // The playlist was re-sorted: the track at old index i is now at newIndex[i]
+    void remap(int[] newIndex) {
+        for (int k = 0; k < n; k++) perm[k] = newIndex[perm[k]];
+        if (pending >= 0) pending = newIndex[pending];
+    }
+
+    // ---------------- internals ----------------
+
+    // Starts the next cycle with first (peekNext's pick) drawn at position 0
+    private void newCycle(int first) {
+        swap(0, positionOf(first));
+        cursor = -1;
+        drawn = 1;
+        pending = -1;
+    }
+
+    private void draw(int k) {
+        if (k < drawn) return;
+        swap(k, k + rng.nextInt(n - k));
+        drawn = k + 1;
+    }
+
+    private int positionOf(int track) {
+        for (int k = 0; k < n; k++) if (perm[k] == track) return k;
+        return -1;
+    }
+
+    // Removes position p, keeping the order of everything else
+    private void take(int p) {
+        System.arraycopy(perm, p + 1, perm, p, n - p - 1);
+        n--;
+        if (p <= cursor) cursor--;
+        if (p < drawn) drawn--;
+    }
+
+    // Inserts track at position p, shifting the rest back
+    private void put(int p, int track) {
+        if (n == perm.length) perm = Arrays.copyOf(perm, n * 2);
+        System.arraycopy(perm, p, perm, p + 1, n - p);
+        perm[p] = track;
+        n++;
+    }
+
+    private void swap(int a, int b) {
+        int t = perm[a];
+        perm[a] = perm[b];
+        perm[b] = t;
+    }
+}
@@ -0,0 +1,142 @@
+package player;
+
+import java.io.ByteArrayOutputStream;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Byte-array sort keys: built once per string, then compared with
+// Arrays.compareUnsigned, which allocates nothing and is vectorized.
+//
+// The string is split into digit and non-digit runs:
+//   - digit runs sort by numeric value, so "Track 2" comes before "Track 10"
+//     (and before any text at the same position, like a file manager)
+//   - text runs use the default locale's collator at primary strength, so case
+//     and accents are ignored and letters follow the language's alphabet
+//
+// Layout, run after run:
+//   0x01, digitCount, digits        (leading zeros dropped)
+//   0x02, escaped collation bytes, 0x00 0x00
+// 0x00 inside collation bytes is written as 0x00 0xFF, which keeps the byte
+// order intact and lets the 0x00 0x00 terminator sort before anything longer.
+final class SortKeys {
+    static final byte[] MISSING = { (byte) 0xFF }; // absent tags sort last
+
+    private static final byte NUMBER = 0x01;
+    private static final byte TEXT = 0x02;
+
+    // Collators aren't thread-safe and keys are built from parallel streams
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator c = Collator.getInstance();
+        c.setStrength(Collator.PRIMARY);
+        c.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return c;
+    });
+
+    // Printable ASCII runs (most file names) skip the collator: each char's
+    // primary weight bytes are looked up here. Only used if it reproduces the
+    // collator on a few samples, i.e. the locale has no ASCII contractions.
+    private static final byte[][] ASCII = asciiWeights();
+
+    private SortKeys() {}
+
+    // Keys built with another locale or another JDK's collation rules may order
+    // differently: stored keys (see LibraryIndex) are only used if this matches
+    static String collation() {
+        return Locale.getDefault().toLanguageTag() + " " + Runtime.version();
+    }
+
+    static byte[] of(String s) {
+        if (s == null) return MISSING;
+
+        byte[] out = new byte[Math.max(16, s.length() * 2 + 8)];
+        int n = 0;
+        int i = 0;
+        while (i < s.length()) {
+            int start = i;
+            if (isDigit(s.charAt(i))) {
+                while (i < s.length() && s.charAt(i) == '0') i++;
+                int from = i;
+                while (i < s.length() && isDigit(s.charAt(i))) i++;
+                if (from == i && i > start) from = i - 1; // all zeros: keep one
+                int digits = Math.min(i - from, 255);
+
+                out = room(out, n, digits + 2);
+                out[n++] = NUMBER;
+                out[n++] = (byte) digits;
+                for (int k = 0; k < digits; k++) out[n++] = (byte) s.charAt(from + k);
+            } else {
+                boolean ascii = ASCII != null;
+                while (i < s.length() && !isDigit(s.charAt(i))) {
+                    char c = s.charAt(i++);
+                    if (c < 0x20 || c > 0x7E) ascii = false;
+                }
+                out = room(out, n, 1);
+                out[n++] = TEXT;
+                if (ascii) {
+                    for (int k = start; k < i; k++) {
+                        byte[] w = ASCII[s.charAt(k)];
+                        out = room(out, n, w.length * 2);
+                        n = putWeights(out, n, w, w.length);
+                    }
+                } else {
+                    byte[] key = COLLATOR.get().getCollationKey(s.substring(start, i)).toByteArray();
+                    int len = primaryLength(key);
+                    out = room(out, n, len * 2);
+                    n = putWeights(out, n, key, len);
+                }
+                out = room(out, n, 2);
+                out[n++] = 0;
+                out[n++] = 0;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // Copies len weight bytes, escaping 0x00 as 0x00 0xFF
+    private static int putWeights(byte[] out, int n, byte[] w, int len) {
+        for (int k = 0; k < len; k++) {
+            byte b = w[k];
+            out[n++] = b;
+            if (b == 0) out[n++] = (byte) 0xFF;
+        }
+        return n;
+    }
+
+    private static byte[][] asciiWeights() {
+        Collator c = COLLATOR.get();
+        byte[][] table = new byte[0x7F][];
+        for (char ch = 0x20; ch <= 0x7E; ch++) {
+            byte[] key = c.getCollationKey(String.valueOf(ch)).toByteArray();
+            table[ch] = Arrays.copyOf(key, primaryLength(key));
+        }
+        for (String sample : new String[] { "Track ", "The Ch-ll_ Song (Live)", "a.b,c;d'e\"f", "Ll Ch Ss Ae Oe Ij", "xX-zZ" }) {
+            byte[] key = c.getCollationKey(sample).toByteArray();
+            ByteArrayOutputStream viaTable = new ByteArrayOutputStream();
+            for (int k = 0; k < sample.length(); k++) viaTable.writeBytes(table[sample.charAt(k)]);
+            if (!Arrays.equals(Arrays.copyOf(key, primaryLength(key)), viaTable.toByteArray())) return null;
+        }
+        return table;
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    // The JDK's keys are 16-bit units: primary weights, then a 0x0000 unit
+    // and the (empty at primary strength) lower levels. Only the weights matter.
+    private static int primaryLength(byte[] key) {
+        for (int k = 0; k + 1 < key.length; k += 2) {
+            if (key[k] == 0 && key[k + 1] == 0) return k;
+        }
+        return key.length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static byte[] room(byte[] out, int n, int extra) {
+        return (n + extra <= out.length) ? out : Arrays.copyOf(out, Math.max(out.length * 2, n + extra));
+    }
+}
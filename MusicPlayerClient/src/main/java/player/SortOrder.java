@@ -0,0 +1,168 @@
+package player;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.IntStream;
+
+// Orders the playlist can be sorted by. All of them compare the byte keys the
+// TrackStore caches (see SortKeys), and break ties by path so the order is total.
+public enum SortOrder {
+    NAME,      // file name (the default)
+    PATH,      // folder, then file name
+    TITLE,     // tag title, file name if there is none
+    ARTIST,    // artist, album, track number, title
+    MODIFIED;  // newest first
+
+    // Track a of store sa against track b of store sb
+    private interface Cmp {
+        int compare(TrackStore sa, int a, TrackStore sb, int b);
+    }
+
+    private static final Cmp BY_NAME = (sa, a, sb, b) -> {
+        int c = SortKeys.compare(sa.nameKey(a), sb.nameKey(b));
+        return (c != 0) ? c : TrackStore.comparePaths(sa, a, sb, b);
+    };
+
+    private static final Cmp BY_PATH = (sa, a, sb, b) -> {
+        int c = SortKeys.compare(sa.dirKey(a), sb.dirKey(b));
+        return (c != 0) ? c : BY_NAME.compare(sa, a, sb, b);
+    };
+
+    private static final Cmp BY_TITLE = (sa, a, sb, b) -> {
+        int c = SortKeys.compare(sa.titleKey(a), sb.titleKey(b));
+        return (c != 0) ? c : BY_NAME.compare(sa, a, sb, b);
+    };
+
+    private static final Cmp BY_ARTIST = (sa, a, sb, b) -> {
+        int c = SortKeys.compare(sa.artistKey(a), sb.artistKey(b));
+        if (c == 0) c = SortKeys.compare(sa.albumKey(a), sb.albumKey(b));
+        if (c == 0) c = Integer.compare(trackNo(sa, a), trackNo(sb, b));
+        if (c == 0) c = SortKeys.compare(sa.titleKey(a), sb.titleKey(b));
+        return (c != 0) ? c : BY_NAME.compare(sa, a, sb, b);
+    };
+
+    private static final Cmp BY_MODIFIED = (sa, a, sb, b) -> {
+        int c = Long.compare(sb.modified(b), sa.modified(a));
+        return (c != 0) ? c : BY_NAME.compare(sa, a, sb, b);
+    };
+
+    // Below this many ids a merge sort half is sorted on the calling thread
+    private static final int PARALLEL_MIN = 8192;
+    private static final int INSERTION_MAX = 24;
+
+    private Cmp cmp() {
+        return switch (this) {
+            case NAME -> BY_NAME;
+            case PATH -> BY_PATH;
+            case TITLE -> BY_TITLE;
+            case ARTIST -> BY_ARTIST;
+            case MODIFIED -> BY_MODIFIED;
+        };
+    }
+
+    Comparator<Track> comparator() {
+        Cmp c = cmp();
+        return (x, y) -> c.compare(x.store(), x.id(), y.store(), y.id());
+    }
+
+    int compare(TrackStore sa, int a, TrackStore sb, int b) {
+        return cmp().compare(sa, a, sb, b);
+    }
+
+    // True if the order only depends on the path, so a bare Track(path) can be
+    // used to binary-search for a track
+    boolean byPathOnly() {
+        return this == NAME || this == PATH;
+    }
+
+    // Sorts ids[0, n) of s. Keys are built once per track (in parallel), then a
+    // parallel merge sort compares only cached byte arrays.
+    void sort(TrackStore s, int[] ids, int n) {
+        prepare(s, ids, n);
+        Cmp c = cmp();
+        IntBinaryOperator cmp = (a, b) -> c.compare(s, a, s, b);
+        ForkJoinPool.commonPool().invoke(new IdSort(ids, new int[n], 0, n, cmp));
+    }
+
+    // Builds every key this order needs up front, so the sort itself only compares
+    void prepare(TrackStore s, int[] ids, int n) {
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int id = ids[i];
+            s.nameKey(id);
+            switch (this) {
+                case PATH -> s.dirKey(id);       // one per folder
+                case TITLE, ARTIST -> s.titleKey(id); // builds all tag keys at once
+                default -> { }
+            }
+        });
+    }
+
+    // "artist" -> ARTIST; null for anything unknown
+    static SortOrder parse(String s) {
+        try {
+            return valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int trackNo(TrackStore s, int id) {
+        TrackInfo i = s.info(id);
+        return (i != null && i.trackNo() > 0) ? i.trackNo() : Integer.MAX_VALUE; // unnumbered tracks last
+    }
+
+    // Stable merge sort of an int[] with a comparator (the JDK only sorts
+    // primitives by value). tmp is scratch space as long as a.
+    @SuppressWarnings("serial") // never serialized
+    private static final class IdSort extends RecursiveAction {
+        private final int[] a, tmp;
+        private final int from, to;
+        private final IntBinaryOperator cmp;
+
+        IdSort(int[] a, int[] tmp, int from, int to, IntBinaryOperator cmp) {
+            this.a = a;
+            this.tmp = tmp;
+            this.from = from;
+            this.to = to;
+            this.cmp = cmp;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from < PARALLEL_MIN) {
+                sort(a, tmp, from, to, cmp);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new IdSort(a, tmp, from, mid, cmp), new IdSort(a, tmp, mid, to, cmp));
+            merge(a, tmp, from, mid, to, cmp);
+        }
+
+        static void sort(int[] a, int[] tmp, int from, int to, IntBinaryOperator cmp) {
+            if (to - from <= INSERTION_MAX) {
+                for (int i = from + 1; i < to; i++) {
+                    int v = a[i];
+                    int j = i - 1;
+                    for (; j >= from && cmp.applyAsInt(a[j], v) > 0; j--) a[j + 1] = a[j];
+                    a[j + 1] = v;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sort(a, tmp, from, mid, cmp);
+            sort(a, tmp, mid, to, cmp);
+            merge(a, tmp, from, mid, to, cmp);
+        }
+
+        static void merge(int[] a, int[] tmp, int from, int mid, int to, IntBinaryOperator cmp) {
+            if (cmp.applyAsInt(a[mid - 1], a[mid]) <= 0) return; // already in order
+            System.arraycopy(a, from, tmp, from, mid - from);
+            int i = from, j = mid, k = from;
+            while (i < mid && j < to) a[k++] = (cmp.applyAsInt(a[j], tmp[i]) < 0) ? a[j++] : tmp[i++];
+            while (i < mid) a[k++] = tmp[i++];
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package player;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Arrays;
+
+// Drives every running sprite from one AnimationTimer, so they all step on
+// the FX pulse together instead of each having a Timeline. The timer only
+// runs while some sprite is animating. FX thread only.
+final class SpriteAnimator {
+    private static SpriteAnimator shared;
+
+    private DancerSprite[] running = new DancerSprite[8];
+    private int count = 0;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            for (int i = 0; i < count; i++) running[i].advance(now);
+        }
+    };
+
+    static SpriteAnimator shared() {
+        if (shared == null) shared = new SpriteAnimator();
+        return shared;
+    }
+
+    // Sprites keep their slot, so add/remove are O(1)
+    void add(DancerSprite s) {
+        if (s.slot >= 0) return;
+        if (count == running.length) running = Arrays.copyOf(running, count * 2);
+        s.slot = count;
+        running[count++] = s;
+        if (count == 1) timer.start();
+    }
+
+    void remove(DancerSprite s) {
+        int i = s.slot;
+        if (i < 0) return;
+        DancerSprite last = running[--count];
+        running[i] = last;
+        last.slot = i;
+        running[count] = null;
+        s.slot = -1;
+        if (count == 0) timer.stop();
+    }
+
+    int running() {
+        return count;
+    }
+}
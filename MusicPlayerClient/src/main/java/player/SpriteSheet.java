@@ -0,0 +1,44 @@
+package player;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// A sprite sheet cut into frames once: the image is decoded once per resource
+// and each frame is a cached viewport onto it, so showing a frame is just
+// ImageView.setViewport with an existing Rectangle2D. Frames run left to
+// right, top to bottom.
+final class SpriteSheet {
+    private static final Map<String, SpriteSheet> LOADED = new HashMap<>(); // FX thread
+
+    final Image image;
+    final int frameW, frameH;
+    private final Rectangle2D[] viewports;
+
+    SpriteSheet(Image image, int cols, int rows, int frames) {
+        if (frames < 1 || frames > cols * rows) throw new IllegalArgumentException("frames: " + frames);
+        this.image = image;
+        this.frameW = (int) image.getWidth() / cols;
+        this.frameH = (int) image.getHeight() / rows;
+        viewports = new Rectangle2D[frames];
+        for (int i = 0; i < frames; i++)
+            viewports[i] = new Rectangle2D((i % cols) * frameW, (i / cols) * frameH, frameW, frameH);
+    }
+
+    // The sheet of a classpath resource, shared by every sprite using it
+    static SpriteSheet load(String resource, int cols, int rows, int frames) {
+        String key = resource + '#' + cols + 'x' + rows + '/' + frames;
+        return LOADED.computeIfAbsent(key, k ->
+                new SpriteSheet(new Image(SpriteSheet.class.getResource(resource).toExternalForm()), cols, rows, frames));
+    }
+
+    int frames() {
+        return viewports.length;
+    }
+
+    Rectangle2D viewport(int frame) {
+        return viewports[frame];
+    }
+}
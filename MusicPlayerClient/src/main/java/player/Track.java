@@ -2,19 +2,99 @@ package player;
 
 import java.nio.file.Path;
 
-public class Track {
-    private final Path path;
+// A track is an id in a TrackStore; this is just a handle to it, so two Track
+// objects for the same id are equal and any of them can be dropped. Tags set
+// through one are seen through all.
+public final class Track {
+    private final TrackStore store;
+    private final int id;
 
+    // A track of its own, outside any library (probes, single files)
     public Track(Path path) {
-        this.path = path;
+        this(path, -1, -1);
     }
 
+    public Track(Path path, long size, long modified) {
+        this(TrackStore.single(path, size, modified), 0);
+    }
+
+    Track(TrackStore store, int id) {
+        this.store = store;
+        this.id = id;
+    }
+
+    TrackStore store() {
+        return store;
+    }
+
+    int id() {
+        return id;
+    }
+
+    // Built on every call; use parent() / displayName() where they're enough
     public Path path() {
-        return path;
+        return store.path(id);
+    }
+
+    // The folder; the same Path object for every track in it
+    public Path parent() {
+        return store.parent(id);
+    }
+
+    public long size() {
+        return store.size(id);
+    }
+
+    public long modified() {
+        return store.modified(id);
+    }
+
+    public TrackInfo info() {
+        return store.info(id);
+    }
+
+    public void setInfo(TrackInfo info) {
+        store.setInfo(id, info);
     }
 
     public String displayName() {
-        return path.getFileName().toString();
+        return store.name(id);
+    }
+
+    // Tag title, falling back to the file name
+    public String title() {
+        TrackInfo i = info();
+        return (i != null && i.title() != null) ? i.title() : displayName();
+    }
+
+    public String artist() {
+        TrackInfo i = info();
+        return (i != null) ? i.artist() : null;
+    }
+
+    public String album() {
+        TrackInfo i = info();
+        return (i != null) ? i.album() : null;
+    }
+
+    public long durationMs() {
+        TrackInfo i = info();
+        return (i != null) ? i.durationMs() : -1;
+    }
+
+    public int trackNo() {
+        TrackInfo i = info();
+        return (i != null) ? i.trackNo() : -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Track t && t.store == store && t.id == id;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(store) * 31 + id;
     }
 
     @Override
@@ -0,0 +1,127 @@
+package player;
+
+import javafx.animation.Animation;
+import javafx.animation.TranslateTransition;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+import javafx.scene.shape.Rectangle;
+import javafx.util.Duration;
+
+import java.util.function.Consumer;
+
+// One row of the music list. ListView only creates enough of these to fill the
+// viewport and recycles them while scrolling, so everything that doesn't depend
+// on the track (styles, sizing, clip, marquee) is set up once here.
+//
+// Looks come from /styles/music-list.css through the :selected / :empty
+// pseudo-classes ListCell already maintains, instead of setStyle strings that
+// have to be parsed again on every update.
+class TrackCell extends ListCell<Track> {
+    static final String STYLESHEET = "/styles/music-list.css";
+
+    private static final double MARQUEE_PX_PER_SEC = 30;
+    private static final double MARQUEE_MARGIN = 40; // cell padding + clip inset
+
+    private final Label title = new Label();
+    private final Label artist = new Label();
+    private final VBox textBox = new VBox(2, title, artist);
+    private final TranslateTransition marquee = new TranslateTransition(Duration.ONE, title);
+    private final Consumer<Track> onShown;
+
+    private Track shown;          // what the labels currently say
+    private boolean marqueeFor;   // selection state the marquee was set up for
+
+    // onShown is called whenever a track without tags scrolls into view
+    TrackCell(double maxTextWidth, Consumer<Track> onShown) {
+        this.onShown = onShown;
+
+        getStyleClass().add("track-cell");
+        title.getStyleClass().add("track-title");
+        artist.getStyleClass().add("track-artist");
+
+        title.setMinWidth(Region.USE_PREF_SIZE);
+        title.setMaxWidth(Region.USE_PREF_SIZE);
+        title.setWrapText(false);
+
+        textBox.setAlignment(Pos.CENTER_LEFT);
+        textBox.setMaxWidth(maxTextWidth);
+
+        setText(null);
+        setPadding(new Insets(6, 8, 6, 8));
+
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(widthProperty().subtract(16));
+        clip.heightProperty().bind(heightProperty());
+        textBox.setClip(clip);
+
+        marquee.setFromX(0);
+        marquee.setAutoReverse(true);
+        marquee.setCycleCount(Animation.INDEFINITE);
+    }
+
+    @Override
+    protected void updateItem(Track item, boolean empty) {
+        super.updateItem(item, empty);
+
+        if (empty || item == null) {
+            shown = null;
+            setGraphic(null);
+            stopMarquee();
+            return;
+        }
+
+        // Labels only change when the track (or its tags) did; re-setting the
+        // same text still costs a relayout.
+        String t = item.title();
+        boolean retitled = !t.equals(title.getText());
+        if (retitled) title.setText(t);
+        String a = item.artist();
+        String at = (a != null) ? a : "Unknown Artist";
+        if (!at.equals(artist.getText())) artist.setText(at);
+
+        if (item.info() == null)
+            onShown.accept(item); // on screen now, read its tags first
+
+        if (getGraphic() != textBox) setGraphic(textBox);
+
+        if (!item.equals(shown) || retitled) {
+            shown = item;
+            marqueeFor = !isSelected(); // title width changed: re-check the marquee
+        }
+        updateMarquee();
+    }
+
+    @Override
+    public void updateSelected(boolean selected) {
+        super.updateSelected(selected);
+        updateMarquee();
+    }
+
+    // Scroll the title back and forth while the row is selected and the title
+    // doesn't fit. Uses the cell's single transition; only its distance changes.
+    private void updateMarquee() {
+        boolean selected = isSelected() && shown != null;
+        if (selected == marqueeFor) return;
+        marqueeFor = selected;
+
+        stopMarquee();
+        if (!selected) return;
+
+        double width = (getListView() != null) ? getListView().getWidth() : getWidth();
+        double overflow = title.prefWidth(-1) - (width - MARQUEE_MARGIN);
+        if (overflow > 0) {
+            marquee.setDuration(Duration.seconds(overflow / MARQUEE_PX_PER_SEC));
+            marquee.setToX(-overflow);
+            marquee.playFromStart();
+        }
+    }
+
+    private void stopMarquee() {
+        if (marquee.getStatus() != Animation.Status.STOPPED) marquee.stop();
+        title.setTranslateX(0);
+    }
+}
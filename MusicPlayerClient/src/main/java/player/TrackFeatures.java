@@ -0,0 +1,26 @@
+package player;
+
+// What FeatureAnalyzer measured in a track's audio. bpm is 0 when no steady
+// beat was found; energy is the loudness over the track's length in
+// ENERGY_POINTS equal parts, 0 = ENERGY_FLOOR_DB or quieter, 255 = full scale.
+public record TrackFeatures(float bpm,
+                            float loudnessDb, // dBFS, see FeatureAnalyzer
+                            float gainDb,     // to bring it to FeatureAnalyzer.REFERENCE_DB
+                            byte[] energy) {
+
+    public static final int ENERGY_POINTS = 32;
+    public static final float ENERGY_FLOOR_DB = -60f;
+
+    // energy[i] back in dBFS
+    public float energyDb(int i) {
+        return ENERGY_FLOOR_DB + (energy[i] & 0xFF) * -ENERGY_FLOOR_DB / 255f;
+    }
+
+    // A text sparkline of the energy curve, for the CLI
+    public String energyBar() {
+        String levels = " .:-=+*#%@"; // ASCII: any console shows it
+        StringBuilder sb = new StringBuilder(energy.length);
+        for (byte e : energy) sb.append(levels.charAt((e & 0xFF) * (levels.length() - 1) / 255));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,18 @@
+package player;
+
+// Tags read from a file's header by MetadataReader. Any field may be missing:
+// strings are null, numbers are -1.
+public record TrackInfo(String title,
+                        String artist,
+                        String album,
+                        int trackNo,     // position on the album
+                        long durationMs,
+                        long artOffset,  // embedded cover image: byte offset in the file
+                        int artLength) { // ... and its length
+
+    public static final TrackInfo EMPTY = new TrackInfo(null, null, null, -1, -1, -1, -1);
+
+    public boolean hasArt() {
+        return artOffset >= 0 && artLength > 0;
+    }
+}
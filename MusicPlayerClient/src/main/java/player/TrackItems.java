@@ -0,0 +1,149 @@
+package player;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+// Items of the music list: ids of one TrackStore, with a Track made per get()
+// (so per visible row). A plain ObservableList would keep a Track alive for
+// every row of the library. FX thread only, like any ListView's items.
+final class TrackItems extends ObservableListBase<Track> {
+    private TrackStore store = new TrackStore(1);
+    private int[] ids = new int[16];
+    private int count = 0;
+
+    @Override
+    public Track get(int i) {
+        Objects.checkIndex(i, count);
+        return store.track(ids[i]);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Track t) || t.store() != store) return -1;
+        for (int i = 0; i < count; i++) if (ids[i] == t.id()) return i;
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    // Replaces everything; Playlist.all() snapshots are taken over without a Track per row
+    @Override
+    public boolean setAll(Collection<? extends Track> c) {
+        List<Track> removed = store.tracks(ids, 0, count); // the old array isn't written again
+        TrackStore s = store;
+        int[] next;
+        if (c instanceof TrackStore.Tracks v) {
+            s = v.store;
+            next = Arrays.copyOfRange(v.ids, v.from, v.to);
+        } else {
+            next = new int[c.size()];
+            int n = 0;
+            for (Track t : c) {
+                if (n == 0) s = t.store();
+                next[n++] = idIn(s, t);
+            }
+        }
+        if (count == 0 && next.length == 0) return false;
+
+        store = s;
+        ids = Arrays.copyOf(next, Math.max(16, next.length));
+        count = next.length;
+        modCount++;
+        beginChange();
+        nextReplace(0, count, removed);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Track> c) {
+        if (c.isEmpty()) return false;
+        int from = count;
+        for (Track t : c) {
+            if (count == 0) store = t.store();
+            int id = idIn(store, t);
+            if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+            ids[count++] = id;
+        }
+        modCount++;
+        beginChange();
+        nextAdd(from, count);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public void add(int index, Track t) {
+        Objects.checkIndex(index, count + 1);
+        if (count == 0) store = t.store();
+        int id = idIn(store, t);
+        if (count == ids.length) ids = Arrays.copyOf(ids, count * 2);
+        System.arraycopy(ids, index, ids, index + 1, count - index);
+        ids[index] = id;
+        count++;
+        modCount++;
+        beginChange();
+        nextAdd(index, index + 1);
+        endChange();
+    }
+
+    @Override
+    public Track remove(int index) {
+        Track old = get(index);
+        System.arraycopy(ids, index + 1, ids, index, count - index - 1);
+        count--;
+        modCount++;
+        beginChange();
+        nextRemove(index, old);
+        endChange();
+        return old;
+    }
+
+    // Removes the rows at indexes (ascending) in one pass, as one change
+    void removeIndexes(int[] indexes) {
+        if (indexes.length == 0) return;
+        modCount++;
+        beginChange();
+        // each removal is reported where it lands once the ones before it are gone
+        for (int k = 0; k < indexes.length; k++) nextRemove(indexes[k] - k, store.track(ids[indexes[k]]));
+        int w = indexes[0];
+        for (int i = indexes[0], k = 0; i < count; i++) {
+            if (k < indexes.length && indexes[k] == i) k++;
+            else ids[w++] = ids[i];
+        }
+        count = w;
+        endChange();
+    }
+
+    @Override
+    public Track set(int index, Track t) {
+        Track old = get(index);
+        ids[index] = idIn(store, t);
+        beginChange();
+        nextSet(index, old);
+        endChange();
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        setAll(List.of());
+    }
+
+    private static int idIn(TrackStore s, Track t) {
+        if (t.store() != s) throw new IllegalArgumentException("Track from another library: " + t);
+        return t.id();
+    }
+}
@@ -0,0 +1,339 @@
+package player;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+// Every track of a library in a few flat arrays instead of an object graph per
+// track (Track + Path + the path's bytes and String + ...):
+//   - parent folders are interned: one Path per folder, tracks keep its int id
+//   - file names live in one UTF-8 byte arena, tracks keep offset + length
+//   - size, mtime, tags and sort keys are parallel arrays indexed by track id
+// Track objects are flyweights (store + id), made on demand, e.g. for a
+// visible row, and can be dropped again right away.
+//
+// Ids are handed out in order and never reused, so a Track stays valid as
+// long as its store lives. Playlist starts a new store per load; tracks
+// removed in between keep their slot until then.
+//
+// Appends and tag writes are synchronized. Readers don't lock: the arrays are
+// volatile fields, so a reader never sees a half-copied array, and tags and
+// sort keys (filled in later, from other threads) are read with acquire.
+// Sort keys are caches: a key lost to a concurrent grow is just built again.
+final class TrackStore {
+    private static final VarHandle INFO = MethodHandles.arrayElementVarHandle(TrackInfo[].class);
+    private static final VarHandle KEY = MethodHandles.arrayElementVarHandle(byte[][].class);
+    private static final VarHandle TAG_KEYS = MethodHandles.arrayElementVarHandle(TagKeys[].class);
+
+    // Keys built from one TrackInfo; rebuilt once the tags change
+    private record TagKeys(TrackInfo from, byte[] title, byte[] artist, byte[] album) {}
+
+    // Folders
+    private final Map<Path, Integer> dirIds = new HashMap<>();
+    private volatile Path[] dirs;
+    private volatile byte[][] dirKeys;
+    private int dirCount = 0;
+
+    // File names, UTF-8, back to back
+    private volatile byte[] names;
+    private int namesLen = 0;
+
+    // Per track
+    private volatile int[] dir;
+    private volatile int[] nameOff;
+    private volatile short[] nameLen; // unsigned
+    private volatile long[] size;
+    private volatile long[] modified;
+    private volatile TrackInfo[] info;
+    private volatile byte[][] nameKeys;
+    private volatile TagKeys[] tagKeys;
+    private volatile int count = 0;
+
+    TrackStore() {
+        this(1024);
+    }
+
+    TrackStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        dirs = new Path[Math.min(capacity, 64)];
+        dirKeys = new byte[dirs.length][];
+        names = new byte[capacity * 24];
+        dir = new int[capacity];
+        nameOff = new int[capacity];
+        nameLen = new short[capacity];
+        size = new long[capacity];
+        modified = new long[capacity];
+        info = new TrackInfo[capacity];
+        nameKeys = new byte[capacity][];
+        tagKeys = new TagKeys[capacity];
+    }
+
+    // A store holding just this one track (see the Track(Path...) constructors)
+    static TrackStore single(Path path, long size, long modified) {
+        TrackStore s = new TrackStore(1);
+        s.add(path, size, modified);
+        return s;
+    }
+
+    int size() {
+        return count;
+    }
+
+    Track track(int id) {
+        return new Track(this, id);
+    }
+
+    // Flyweights for ids[from, to), made as they're read
+    List<Track> tracks(int[] ids, int from, int to) {
+        return new Tracks(this, ids, from, to);
+    }
+
+    // ---------------- Adding ----------------
+
+    synchronized int add(Path path, long size, long modified) {
+        byte[] name = path.getFileName().toString().getBytes(StandardCharsets.UTF_8);
+        return add(dirId(path.getParent()), name, 0, name.length, size, modified);
+    }
+
+    // name[from, from + len) is the UTF-8 file name inside folder dirId
+    synchronized int add(int dirId, byte[] name, int from, int len, long size, long modified) {
+        if (len > 0xFFFF) throw new IllegalArgumentException("File name too long");
+        int id = count;
+        if (id == dir.length) grow(id * 2);
+        if (namesLen + len > names.length) names = Arrays.copyOf(names, Math.max(names.length * 2, namesLen + len));
+        System.arraycopy(name, from, names, namesLen, len);
+
+        dir[id] = dirId;
+        nameOff[id] = namesLen;
+        nameLen[id] = (short) len;
+        this.size[id] = size;
+        this.modified[id] = modified;
+        namesLen += len;
+        count = id + 1;
+        return id;
+    }
+
+    // Id of t in this store, copying it in (tags included) if it lives elsewhere
+    synchronized int adopt(Track t) {
+        if (t.store() == this) return t.id();
+        int id = add(t.path(), t.size(), t.modified());
+        INFO.setRelease(info, id, t.info());
+        return id;
+    }
+
+    // The file changed on disk: new size / mtime, and its tags have to be read again
+    synchronized void update(int id, long size, long modified) {
+        this.size[id] = size;
+        this.modified[id] = modified;
+        INFO.setRelease(info, id, (TrackInfo) null);
+        TAG_KEYS.setRelease(tagKeys, id, (TagKeys) null);
+    }
+
+    // Interned folder id, added if new (dir may be null for a bare file name)
+    synchronized int dirId(Path dir) {
+        Integer id = dirIds.get(dir);
+        if (id != null) return id;
+        if (dirCount == dirs.length) {
+            dirs = Arrays.copyOf(dirs, dirCount * 2);
+            dirKeys = Arrays.copyOf(dirKeys, dirCount * 2);
+        }
+        dirs[dirCount] = dir;
+        dirIds.put(dir, dirCount);
+        return dirCount++;
+    }
+
+    // Folder id if the folder is known, else -1
+    synchronized int findDir(Path dir) {
+        Integer id = dirIds.get(dir);
+        return (id != null) ? id : -1;
+    }
+
+    // Which folder ids are dir itself or below it
+    synchronized boolean[] dirsUnder(Path dir) {
+        boolean[] under = new boolean[dirCount];
+        for (int i = 0; i < dirCount; i++) under[i] = dirs[i] != null && dirs[i].startsWith(dir);
+        return under;
+    }
+
+    private void grow(int capacity) {
+        dir = Arrays.copyOf(dir, capacity);
+        nameOff = Arrays.copyOf(nameOff, capacity);
+        nameLen = Arrays.copyOf(nameLen, capacity);
+        size = Arrays.copyOf(size, capacity);
+        modified = Arrays.copyOf(modified, capacity);
+        info = Arrays.copyOf(info, capacity);
+        nameKeys = Arrays.copyOf(nameKeys, capacity);
+        tagKeys = Arrays.copyOf(tagKeys, capacity);
+    }
+
+    // ---------------- Reading ----------------
+
+    int dirOf(int id) {
+        return dir[id];
+    }
+
+    Path parent(int id) {
+        return dirs[dir[id]];
+    }
+
+    Path path(int id) {
+        Path d = parent(id);
+        String n = name(id);
+        return (d != null) ? d.resolve(n) : Path.of(n);
+    }
+
+    String name(int id) {
+        return new String(names, nameOff[id], nameLength(id), StandardCharsets.UTF_8);
+    }
+
+    int nameLength(int id) {
+        return Short.toUnsignedInt(nameLen[id]);
+    }
+
+    // Copies the UTF-8 name to out at pos (see LibraryIndex.save)
+    void copyName(int id, byte[] out, int pos) {
+        System.arraycopy(names, nameOff[id], out, pos, nameLength(id));
+    }
+
+    // True if id's file name is exactly these UTF-8 bytes
+    boolean nameEquals(int id, byte[] utf8) {
+        int off = nameOff[id];
+        return Arrays.equals(names, off, off + nameLength(id), utf8, 0, utf8.length);
+    }
+
+    // True if id's file name ends with suffix, ASCII letters compared
+    // case-insensitively (suffix given in lower case, e.g. ".mp3")
+    boolean nameEndsWith(int id, byte[] suffix) {
+        int len = nameLength(id);
+        if (len < suffix.length) return false;
+        int off = nameOff[id] + len - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            int b = names[off + i];
+            if (b >= 'A' && b <= 'Z') b += 'a' - 'A';
+            if (b != suffix[i]) return false;
+        }
+        return true;
+    }
+
+    long size(int id) {
+        return size[id];
+    }
+
+    long modified(int id) {
+        return modified[id];
+    }
+
+    TrackInfo info(int id) {
+        return (TrackInfo) INFO.getAcquire(info, id);
+    }
+
+    synchronized void setInfo(int id, TrackInfo i) {
+        INFO.setRelease(info, id, i);
+    }
+
+    // ---------------- Sort keys ----------------
+
+    byte[] nameKey(int id) {
+        byte[][] keys = nameKeys;
+        byte[] k = (byte[]) KEY.getAcquire(keys, id);
+        if (k == null) KEY.setRelease(keys, id, k = SortKeys.of(name(id)));
+        return k;
+    }
+
+    // One key per folder, shared by its tracks
+    byte[] dirKey(int id) {
+        return folderKey(dir[id]);
+    }
+
+    // By folder id
+    byte[] folderKey(int d) {
+        byte[][] keys = dirKeys;
+        byte[] k = (byte[]) KEY.getAcquire(keys, d);
+        if (k == null) KEY.setRelease(keys, d, k = SortKeys.of(String.valueOf(dirs[d])));
+        return k;
+    }
+
+    // Keys read back from the LibraryIndex, built with the same collation
+    void setNameKey(int id, byte[] k) {
+        KEY.setRelease(nameKeys, id, k);
+    }
+
+    void setFolderKey(int d, byte[] k) {
+        KEY.setRelease(dirKeys, d, k);
+    }
+
+    byte[] titleKey(int id) {
+        return tagKeys(id).title;
+    }
+
+    byte[] artistKey(int id) {
+        return tagKeys(id).artist;
+    }
+
+    byte[] albumKey(int id) {
+        return tagKeys(id).album;
+    }
+
+    private TagKeys tagKeys(int id) {
+        TrackInfo i = info(id);
+        TagKeys[] all = tagKeys;
+        TagKeys k = (TagKeys) TAG_KEYS.getAcquire(all, id);
+        if (k == null || k.from != i) {
+            boolean tagged = i != null && i.title() != null;
+            k = new TagKeys(i,
+                    tagged ? SortKeys.of(i.title()) : nameKey(id),
+                    SortKeys.of(i != null ? i.artist() : null),
+                    SortKeys.of(i != null ? i.album() : null));
+            TAG_KEYS.setRelease(all, id, k);
+        }
+        return k;
+    }
+
+    // Path order without building Paths: folder, then file name bytes.
+    // Only used to break ties, so it just has to be total and match equals.
+    static int comparePaths(TrackStore sa, int a, TrackStore sb, int b) {
+        if (sa == sb && a == b) return 0;
+        Path da = sa.parent(a), db = sb.parent(b);
+        if (da != db) {
+            if (da == null || db == null) return (da == null) ? -1 : 1;
+            int c = da.compareTo(db);
+            if (c != 0) return c;
+        }
+        int oa = sa.nameOff[a], ob = sb.nameOff[b];
+        return Arrays.compareUnsigned(sa.names, oa, oa + sa.nameLength(a), sb.names, ob, ob + sb.nameLength(b));
+    }
+
+    // ---------------- Views ----------------
+
+    // Read-only list over a slice of ids
+    static final class Tracks extends AbstractList<Track> implements RandomAccess {
+        final TrackStore store;
+        final int[] ids;
+        final int from, to;
+
+        Tracks(TrackStore store, int[] ids, int from, int to) {
+            this.store = store;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Track get(int i) {
+            if (i < 0 || i >= to - from) throw new IndexOutOfBoundsException(i);
+            return new Track(store, ids[from + i]);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
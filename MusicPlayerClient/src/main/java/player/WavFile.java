@@ -0,0 +1,154 @@
+package player;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A PCM WAV file played straight from memory: the RIFF chunks are parsed once
+// on open, the sample data is memory-mapped, and read() copies slices out of
+// the mapping into the caller's buffer. Seeking is just a new offset.
+//
+// A mapping is at most 2 GB, so the data is mapped in pieces of about WINDOW
+// (rounded down to whole frames), one at a time, as playback reaches them. RF64 (WAV over 4 GB) is understood.
+// Not thread-safe: one reader (HeadlessEngine's output thread).
+final class WavFile implements AutoCloseable {
+    private static final long WINDOW = 1L << 30;
+    private static final int HEADER_MAX = 1 << 16; // where fmt / data have to start
+
+    private static final int PCM = 1;
+    private static final int EXTENSIBLE = 0xFFFE;
+
+    final AudioFormat format;
+    final int frameSize;
+    private final FileChannel ch;
+    private final long dataOffset;
+    private final long dataLength;
+    private final long windowSize;       // WINDOW in whole frames, so no read splits one
+    private long pos = 0;                // byte offset into the data
+    private long windowStart = -1;       // data offset 'window' maps
+    private MappedByteBuffer window;
+
+    private WavFile(FileChannel ch, AudioFormat format, long dataOffset, long dataLength) {
+        this.ch = ch;
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.dataOffset = dataOffset;
+        this.dataLength = dataLength - dataLength % frameSize; // whole frames only
+        this.windowSize = WINDOW - WINDOW % frameSize;
+    }
+
+    // null if p isn't a WAV this can play (compressed, float, 8-bit...): those
+    // go through javax.sound's own decoding instead
+    static WavFile open(Path p) throws IOException {
+        FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+        try {
+            WavFile w = parse(ch);
+            if (w == null) ch.close();
+            return w;
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private static WavFile parse(FileChannel ch) throws IOException {
+        long fileSize = ch.size();
+        ByteBuffer h = ByteBuffer.allocate((int) Math.min(HEADER_MAX, fileSize)).order(ByteOrder.LITTLE_ENDIAN);
+        while (h.hasRemaining() && ch.read(h, h.position()) > 0) { }
+        h.flip();
+        if (h.remaining() < 12) return null;
+        int riff = h.getInt(0);
+        boolean rf64 = riff == fourCC("RF64");
+        if ((riff != fourCC("RIFF") && !rf64) || h.getInt(8) != fourCC("WAVE")) return null;
+
+        AudioFormat format = null;
+        long dataSize64 = -1;
+        int at = 12;
+        while (at + 8 <= h.limit()) {
+            int id = h.getInt(at);
+            long size = Integer.toUnsignedLong(h.getInt(at + 4));
+            int body = at + 8;
+            if (id == fourCC("ds64") && body + 16 <= h.limit()) {
+                dataSize64 = h.getLong(body + 8); // riffSize, dataSize, sampleCount...
+            } else if (id == fourCC("fmt ") && body + 16 <= h.limit()) {
+                format = pcmFormat(h, body, size);
+                if (format == null) return null;
+            } else if (id == fourCC("data")) {
+                if (format == null) return null;
+                long len = (rf64 && dataSize64 >= 0) ? dataSize64 : size;
+                long available = fileSize - body;
+                if (size == 0xFFFFFFFFL || len > available) len = available; // streamed / truncated
+                return new WavFile(ch, format, body, len);
+            }
+            long next = body + size + (size & 1); // chunks are padded to even sizes
+            if (next > HEADER_MAX) return null;
+            at = (int) next;
+        }
+        return null;
+    }
+
+    // Integer PCM of 16 bits or more, little-endian, as the line takes it
+    private static AudioFormat pcmFormat(ByteBuffer h, int body, long size) {
+        int tag = Short.toUnsignedInt(h.getShort(body));
+        int channels = h.getShort(body + 2);
+        int rate = h.getInt(body + 4);
+        int blockAlign = h.getShort(body + 12);
+        int bits = h.getShort(body + 14);
+        if (tag == EXTENSIBLE && size >= 40 && body + 26 <= h.limit()) {
+            bits = h.getShort(body + 18); // valid bits
+            tag = Short.toUnsignedInt(h.getShort(body + 24)); // sub-format GUID starts with the tag
+            if (blockAlign / Math.max(1, channels) * 8 != bits) return null; // padded containers
+        }
+        if (tag != PCM || channels <= 0 || rate <= 0) return null;
+        if (bits != 16 && bits != 24 && bits != 32) return null;
+        if (blockAlign != channels * bits / 8) return null;
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, bits, channels, blockAlign, rate, false);
+    }
+
+    private static int fourCC(String s) {
+        return (s.charAt(0)) | (s.charAt(1) << 8) | (s.charAt(2) << 16) | (s.charAt(3) << 24);
+    }
+
+    long frames() {
+        return dataLength / frameSize;
+    }
+
+    long frame() {
+        return pos / frameSize;
+    }
+
+    void seekFrame(long frame) {
+        pos = Math.max(0, Math.min(frame, frames())) * frameSize;
+    }
+
+    // Copies up to len bytes (whole frames if len is) from the current position
+    // into b; -1 at the end. Stops at a window boundary, so it may read less.
+    int read(byte[] b, int off, int len) throws IOException {
+        if (pos >= dataLength) return -1;
+        long start = pos - pos % windowSize;
+        if (start != windowStart) {
+            window = ch.map(FileChannel.MapMode.READ_ONLY, dataOffset + start, Math.min(windowSize, dataLength - start));
+            windowStart = start;
+        }
+        int at = (int) (pos - start);
+        int n = Math.min(len, window.limit() - at);
+        window.get(at, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    // The mapping itself goes when it's no longer referenced
+    @Override
+    public void close() {
+        try {
+            ch.close();
+        } catch (IOException ignored) {
+        }
+        window = null;
+    }
+}